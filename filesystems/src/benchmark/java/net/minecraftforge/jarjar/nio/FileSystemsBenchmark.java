@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio;
+
+import net.minecraftforge.jarjar.nio.pathfs.PathFileSystem;
+import net.minecraftforge.jarjar.nio.pathfs.PathFileSystemProvider;
+import net.minecraftforge.jarjar.nio.util.Lazy;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing harness for the classes that have Java 17 replacements, run through {@code benchmark} for the Java 8 classes
+ * and {@code benchmarkMultiRelease} for the multi-release jar. Both run on the same Java 17 runtime, so the only
+ * difference is which classes get loaded.
+ * <p>
+ * Each case runs a fixed number of warmup rounds, then reports the best and median throughput of the measured rounds.
+ * Arguments: [threads] [rounds] [round millis] [archive]
+ */
+public final class FileSystemsBenchmark {
+    private static volatile Object sink;
+
+    public static void main(String[] args) throws Exception {
+        final int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        final long millis = args.length > 2 ? Long.parseLong(args[2]) : 500;
+        final Path archive = Paths.get(args.length > 3 ? args[3] : "src/test/resources/dir1.zip").toAbsolutePath();
+
+        System.out.printf(Locale.ROOT, "Java %s, %s, %d threads, %d rounds of %dms%n", System.getProperty("java.version"),
+            Lazy.class.getProtectionDomain().getCodeSource().getLocation(), threads, rounds, millis);
+
+        final Lazy<String> lazy = Lazy.of(() -> "value");
+        lazy.get();
+        run("Lazy.get", threads, rounds, millis, () -> sink = lazy.get());
+
+        final PathFileSystemProvider provider = new PathFileSystemProvider();
+        final PathFileSystem fileSystem = provider.newFileSystem(archive);
+        final URI uri = URI.create("path://" + fileSystem.getKey());
+        run("Registry lookup", threads, rounds, millis, () -> sink = provider.getFileSystem(uri));
+
+        final Path entry = fileSystem.getPath("masktest.txt");
+        final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(64));
+        run("Channel read", threads, rounds, millis, () -> {
+            final ByteBuffer buffer = buffers.get();
+            buffer.clear();
+            try (SeekableByteChannel channel = Files.newByteChannel(entry)) {
+                while (channel.read(buffer) > 0) { }
+            }
+            sink = buffer;
+        });
+    }
+
+    private interface Op {
+        void run() throws IOException;
+    }
+
+    private static void run(String name, int threads, int rounds, long millis, Op op) throws Exception {
+        final int warmup = Math.max(1, rounds / 2);
+        final List<Double> results = new ArrayList<>();
+        for (int round = 0; round < warmup + rounds; round++) {
+            final double perMs = round(threads, millis, op);
+            if (round >= warmup)
+                results.add(perMs);
+        }
+
+        results.sort(null);
+        System.out.printf(Locale.ROOT, "%-16s best %,14.1f ops/ms   median %,14.1f ops/ms%n", name, results.get(results.size() - 1), results.get(results.size() / 2));
+    }
+
+    private static double round(int threads, long millis, Op op) throws Exception {
+        final AtomicLong total = new AtomicLong();
+        final CountDownLatch start = new CountDownLatch(1);
+        final long[] end = new long[1];
+        final List<Thread> workers = new ArrayList<>();
+        final Throwable[] failure = new Throwable[1];
+
+        for (int x = 0; x < threads; x++) {
+            final Thread worker = new Thread(() -> {
+                long ops = 0;
+                try {
+                    start.await();
+                    while (System.nanoTime() - end[0] < 0) {
+                        for (int y = 0; y < 64; y++)
+                            op.run();
+                        ops += 64;
+                    }
+                } catch (Throwable t) {
+                    failure[0] = t;
+                }
+                total.addAndGet(ops);
+            });
+            worker.start();
+            workers.add(worker);
+        }
+
+        final long began = System.nanoTime();
+        end[0] = began + millis * 1_000_000L;
+        start.countDown();
+        for (Thread worker : workers)
+            worker.join();
+
+        if (failure[0] != null)
+            throw new IllegalStateException("Benchmark failed", failure[0]);
+
+        return total.get() / ((System.nanoTime() - began) / 1_000_000.0);
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.pathfs;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Java 17+ version of the registry. Lookups are lock free and safe against concurrent registration, and writers use
+ * a {@link ReentrantLock} so they don't pin virtual threads while a file system is being created.
+ */
+final class FileSystemRegistry {
+    private final ConcurrentHashMap<String, PathFileSystem> fileSystems = new ConcurrentHashMap<>();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    PathFileSystem get(String key) {
+        return fileSystems.get(key);
+    }
+
+    /** Creates and registers a file system, replacing any existing one with the same key */
+    PathFileSystem register(String key, Supplier<PathFileSystem> factory) {
+        lock.lock();
+        try {
+            var fs = factory.get();
+            fileSystems.put(key, fs);
+            return fs;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void remove(String key) {
+        lock.lock();
+        try {
+            fileSystems.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    List<String> keys() {
+        return new ArrayList<>(fileSystems.keySet());
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.util;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Java 17+ version of Lazy, same behavior as the Java 8 one.
+ * Reads of a computed value don't take the lock, and the lock is a {@link ReentrantLock} so a thread waiting on the
+ * value doesn't pin a virtual thread's carrier.
+ */
+public class Lazy<T> {
+
+    public static <T> Lazy<T> of() {
+        return new Lazy<>((Supplier<T>) null);
+    }
+
+    public static <T> Lazy<T> of(final T value) {
+        return new Lazy<T>(value);
+    }
+
+    public static <T> Lazy<T> of(final Supplier<T> provider) {
+        return new Lazy<T>(provider);
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private T value;
+    private boolean initialized;
+    // Set once value holds its final result, lets get() skip the lock
+    private volatile boolean done;
+    private final Supplier<T> provider;
+
+    private Lazy(final T value) {
+        this.value = value;
+        this.initialized = true;
+        this.provider = () -> value;
+        this.done = true;
+    }
+
+    private Lazy(final Supplier<T> provider) {
+        this.value = null;
+        this.initialized = false;
+        this.provider = provider;
+    }
+
+    public T get() {
+        if (done)
+            return value;
+
+        lock.lock();
+        try {
+            if (!initialized && provider != null) {
+                initialized = true;
+                try {
+                    this.value = provider.get();
+                } finally {
+                    done = true;
+                }
+            }
+
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void ifPresent(final Consumer<T> consumer) {
+        lock.lock();
+        try {
+            if (!initialized)
+                return;
+
+            consumer.accept(this.value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public <R> Lazy<R> map(Function<T, R> mapper) {
+        return of(() -> mapper.apply(get()));
+    }
+
+    public T orElse(T elseValue) {
+        lock.lock();
+        try {
+            if (!initialized)
+                return elseValue;
+
+            return value;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -4,16 +4,20 @@
  */
 package net.minecraftforge.jarjar.nio.layzip;
 
+import net.minecraftforge.jarjar.nio.pathfs.PathFileSystem;
 import net.minecraftforge.jarjar.nio.pathfs.PathFileSystemProvider;
 import net.minecraftforge.jarjar.nio.pathfs.PathPath;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Path;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
@@ -22,6 +26,8 @@ import java.util.Optional;
 public class LayeredZipFileSystemProvider extends PathFileSystemProvider {
     public static final String SCHEME = "jij";
     public static final String URI_SPLIT_REGEX = COMPONENT_SEPERATOR;
+    private static final char COMPONENT_SEPERATOR_CHAR = '~';
+    private static final String DOUBLE_SLASH_SEPERATOR = PATH_SEPERATOR + '/';
 
     @Override
     public String getScheme() {
@@ -54,7 +60,7 @@ public class LayeredZipFileSystemProvider extends PathFileSystemProvider {
         }
 
         final Path lastPath = workingSystem.getPath(lastSection).toAbsolutePath();
-        return getOrCreateNewSystem(keyPrefix, lastPath);
+        return getOrCreateNewSystem(keyPrefix, lastPath, env);
     }
 
     private String handleAbsolutePrefixOnWindows(final FileSystem workingSystem, String section) {
@@ -75,8 +81,14 @@ public class LayeredZipFileSystemProvider extends PathFileSystemProvider {
     }
 
     private FileSystem getOrCreateNewSystem(String keyPrefix, Path path) {
+        return getOrCreateNewSystem(keyPrefix, path, Collections.emptyMap());
+    }
+
+    private FileSystem getOrCreateNewSystem(String keyPrefix, Path path, Map<String, ?> env) {
         final Map<String, Object> args = new HashMap<>();
         args.put("packagePath", path.toAbsolutePath());
+        if (env.containsKey(OFF_HEAP_INDEX))
+            args.put(OFF_HEAP_INDEX, env.get(OFF_HEAP_INDEX));
 
         try {
             URI uri = new URI(super.getScheme() + ':' + keyPrefix + path.toUri().toString().replace('\\', '/'));
@@ -128,12 +140,36 @@ public class LayeredZipFileSystemProvider extends PathFileSystemProvider {
 
     @Override
     protected URI buildUriFor(final PathPath path) throws URISyntaxException, IllegalArgumentException {
-        String prefix = "";
+        final String prefix = path.getFileSystem().getUriPrefix();
+        final String pathStr = path.toString();
+        if (prefix != null && pathStr.indexOf(COMPONENT_SEPERATOR_CHAR) == -1)
+            return URI.create(prefix + pathStr);
+
+        return URI.create((SCHEME + ':' + buildPrefixFor(path.getFileSystem().getTarget()) + pathStr).replace(DOUBLE_SLASH_SEPERATOR, PATH_SEPERATOR));
+    }
 
-        prefix = buildPrefixFor(path.getFileSystem().getTarget());
+    @Override
+    protected URL buildUrlFor(final PathPath path) throws MalformedURLException {
+        final String prefix = path.getFileSystem().getUriPrefix();
+        final String pathStr = path.toString();
+        if (prefix == null || pathStr.indexOf(COMPONENT_SEPERATOR_CHAR) != -1)
+            return super.buildUrlFor(path);
+
+        // URI.toURL parses the URI's string as a URL, do the same without validating it as a URI first
+        return new URL(prefix + pathStr);
+    }
+
+    /**
+     * The separator cleanup in {@link #buildUriFor(PathPath)} runs over the whole URI, so the prefix can only be reused
+     * for paths that can't form a separator together with its end.
+     */
+    @Override
+    protected String buildUriPrefixFor(final PathFileSystem fileSystem) {
+        final String prefix = buildPrefixFor(fileSystem.getTarget());
+        if (prefix.endsWith(COMPONENT_SEPERATOR) || prefix.endsWith(PATH_SEPERATOR))
+            return null;
 
-        return URI.create(String.format("%s:%s%s", SCHEME, prefix, path)
-                                .replace(String.format("%s/", PATH_SEPERATOR), PATH_SEPERATOR));
+        return (SCHEME + ':' + prefix).replace(DOUBLE_SLASH_SEPERATOR, PATH_SEPERATOR);
     }
 
     protected String buildPrefixFor(final Path path) {
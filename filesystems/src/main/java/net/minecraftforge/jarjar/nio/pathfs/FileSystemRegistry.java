@@ -0,0 +1,44 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.pathfs;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * The file systems known to a {@link PathFileSystemProvider}, by key.
+ * Writes are serialized, lookups are not.
+ * <p>
+ * Java 17+ runtimes load the replacement in the {@code java17} source set instead, keep both in sync.
+ */
+final class FileSystemRegistry {
+    private final Map<String, PathFileSystem> fileSystems = new HashMap<>();
+
+    PathFileSystem get(String key) {
+        return fileSystems.get(key);
+    }
+
+    /** Creates and registers a file system, replacing any existing one with the same key */
+    PathFileSystem register(String key, Supplier<PathFileSystem> factory) {
+        synchronized (fileSystems) {
+            final PathFileSystem fs = factory.get();
+            fileSystems.put(key, fs);
+            return fs;
+        }
+    }
+
+    void remove(String key) {
+        synchronized (fileSystems) {
+            fileSystems.remove(key);
+        }
+    }
+
+    List<String> keys() {
+        return new ArrayList<>(fileSystems.keySet());
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.pathfs;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Weak intern table of path components, one per {@link PathFileSystem}.
+ * Paths in the same package share a single copy of each name, and since equal names held by live paths are always
+ * the same instance, comparing them stops at the reference check in String#equals. Names no path refers to anymore are
+ * collected, so the table never holds more than the paths that are alive.
+ * <p>
+ * Lookups don't lock, paths are built from every discovery thread at once. Cleared names are swept on the next intern.
+ */
+final class PathComponentTable {
+    static final String EMPTY = "";
+    static final String DOT = ".";
+    static final String DOT_DOT = "..";
+
+    private final ConcurrentHashMap<Name, Name> names = new ConcurrentHashMap<>();
+    private final ReferenceQueue<String> cleared = new ReferenceQueue<>();
+
+    String intern(String name) {
+        // Literals are interned by the JVM already, and never collected
+        if (name.isEmpty())
+            return EMPTY;
+
+        for (Reference<? extends String> ref; (ref = cleared.poll()) != null; )
+            names.remove(ref);
+
+        final Name key = new Name(name, cleared);
+        while (true) {
+            final Name existing = names.putIfAbsent(key, key);
+            if (existing == null)
+                return name;
+
+            final String value = existing.get();
+            if (value != null)
+                return value;
+
+            // Cleared between the lookup and now, drop it and try again
+            names.remove(existing, existing);
+        }
+    }
+
+    String[] intern(String[] parts) {
+        final String[] ret = new String[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            ret[i] = intern(parts[i]);
+        return ret;
+    }
+
+    /** Weak key that compares by the name it refers to, a cleared key is only equal to itself */
+    private static final class Name extends WeakReference<String> {
+        private final int hash;
+
+        private Name(String name, ReferenceQueue<String> queue) {
+            super(name, queue);
+            this.hash = name.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this)
+                return true;
+            if (!(obj instanceof Name))
+                return false;
+
+            final String name = get();
+            return name != null && name.equals(((Name)obj).get());
+        }
+    }
+}
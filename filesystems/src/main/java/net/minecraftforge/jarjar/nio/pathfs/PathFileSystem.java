@@ -6,42 +6,61 @@ package net.minecraftforge.jarjar.nio.pathfs;
 
 import net.minecraftforge.jarjar.nio.util.LambdaExceptionUtils;
 import net.minecraftforge.jarjar.nio.util.Lazy;
+import net.minecraftforge.jarjar.nio.zip.ZipEntryIndex;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessMode;
+import java.nio.file.DirectoryIteratorException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.FileStore;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.PathMatcher;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.WatchService;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.UserPrincipalLookupService;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
 
 public class PathFileSystem extends FileSystem {
+    // Must be initialized before any path, including the root
+    private final PathComponentTable components = new PathComponentTable();
     private final Path root = new PathPath(this, false, PathPath.ROOT).toAbsolutePath();
     private final PathFileSystemProvider provider;
     private final String key;
     private final Path target;
     private final Lazy<FileSystem> innerSystem;
     private final Lazy<Path> innerFSTarget;
+    private final Lazy<ZipEntryIndex> entryIndex;
+    private final Lazy<String> uriPrefix = Lazy.of(() -> provider().buildUriPrefixFor(this));
 
-    PathFileSystem(PathFileSystemProvider provider, String key, Path target) {
+    PathFileSystem(PathFileSystemProvider provider, String key, Path target, boolean offHeapIndex) {
         this.provider = provider;
         this.key = key;
         this.target = target;
 
+        // Optional off-heap entry table used to answer reads, listings, attribute and existence queries without opening the
+        // inner file system. Anything it can't answer, or any archive it fails to read, falls back to the inner system.
+        this.entryIndex = !offHeapIndex ? Lazy.of((ZipEntryIndex)null) : Lazy.of(() -> {
+            try (SeekableByteChannel channel = Files.newByteChannel(target, StandardOpenOption.READ)) {
+                return ZipEntryIndex.build(channel);
+            } catch (IOException | UncheckedIOException e) {
+                return null;
+            }
+        });
+
         this.innerSystem = Lazy.of(() -> {
             try {
                 return FileSystems.newFileSystem(target, this.getClass().getClassLoader());
@@ -67,6 +86,10 @@ public class PathFileSystem extends FileSystem {
         });
     }
 
+    PathComponentTable getComponents() {
+        return this.components;
+    }
+
     public String getKey() {
         return this.key;
     }
@@ -75,6 +98,14 @@ public class PathFileSystem extends FileSystem {
         return root;
     }
 
+    /**
+     * Returns the string every URI of a path in this file system starts with, or null if the provider can't build
+     * URIs by simple concatenation. Computed once by {@link PathFileSystemProvider#buildUriPrefixFor(PathFileSystem)}.
+     */
+    public String getUriPrefix() {
+        return uriPrefix.get();
+    }
+
     @Override
     public PathFileSystemProvider provider() {
         return provider;
@@ -100,6 +131,15 @@ public class PathFileSystem extends FileSystem {
         if (path.toAbsolutePath().equals(root))
             return Files.readAttributes(this.target, type, options);
 
+        if (type == BasicFileAttributes.class) {
+            final ZipEntryIndex index = this.entryIndex.get();
+            final int entry = index == null ? -1 : findEntry(index, path);
+            if (entry >= 0)
+                return type.cast(index.readAttributes(entry));
+            if (entry == MISSING)
+                throw new NoSuchFileException(path.toString());
+        }
+
         return innerSystem.get().provider().readAttributes(getOuterTarget(path), type, options);
     }
 
@@ -132,6 +172,15 @@ public class PathFileSystem extends FileSystem {
             }
         }
 
+        final ZipEntryIndex index = isReadOnly(options) ? this.entryIndex.get() : null;
+        if (index != null) {
+            final int entry = findEntry(index, path);
+            if (entry >= 0 && !index.isDirectory(entry))
+                return index.newByteChannel(entry, this.target);
+            if (entry == MISSING)
+                throw new NoSuchFileException(path.toString());
+        }
+
         return this.innerSystem.get().provider().newByteChannel(getOuterTarget(path), options, attrs);
     }
 
@@ -171,6 +220,18 @@ public class PathFileSystem extends FileSystem {
     }
 
     public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter) {
+        final ZipEntryIndex index = this.entryIndex.get();
+        if (index != null) {
+            if (dir.toAbsolutePath().equals(root))
+                return list(index, -1, dir, filter);
+
+            final int entry = findEntry(index, dir);
+            if (entry >= 0 && index.isDirectory(entry))
+                return list(index, entry, dir, filter);
+            if (entry != UNKNOWN)
+                return PathFSUtils.NULL_STREAM;
+        }
+
         if (dir.toAbsolutePath().equals(root)) {
             try {
                 return PathFSUtils.adapt(
@@ -192,14 +253,82 @@ public class PathFileSystem extends FileSystem {
         }
     }
 
+    private static DirectoryStream<Path> list(ZipEntryIndex index, int dir, Path parent, DirectoryStream.Filter<? super Path> filter) {
+        final List<Path> children = new ArrayList<>();
+        for (int child = index.getFirstChild(dir); child != -1; child = index.getNextSibling(child)) {
+            final String name = index.getName(child);
+            final Path path = parent.resolve(name.substring(name.lastIndexOf('/') + 1));
+            try {
+                if (filter.accept(path))
+                    children.add(path);
+            } catch (IOException e) {
+                throw new DirectoryIteratorException(e);
+            }
+        }
+
+        return new DirectoryStream<Path>() {
+            @Override
+            public Iterator<Path> iterator() {
+                return children.iterator();
+            }
+
+            @Override
+            public void close() { }
+        };
+    }
+
     public Path getTarget() {
         return target;
     }
 
     public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        final ZipEntryIndex index = modes.length == 0 || (modes.length == 1 && modes[0] == AccessMode.READ) ? this.entryIndex.get() : null;
+        if (index != null && !path.toAbsolutePath().equals(root)) {
+            final int entry = findEntry(index, path);
+            if (entry >= 0)
+                return;
+            if (entry == MISSING)
+                throw new NoSuchFileException(path.toString());
+        }
+
         innerSystem.get().provider().checkAccess(getOuterTarget(path), modes);
     }
 
+    /** Returns true if the inner file system has been opened, the entry index is meant to avoid that for reads */
+    boolean isInnerSystemOpened() {
+        return innerSystem.orElse(null) != null;
+    }
+
+    private static boolean isReadOnly(Set<? extends OpenOption> options) {
+        for (OpenOption option : options) {
+            if (option != StandardOpenOption.READ)
+                return false;
+        }
+        return true;
+    }
+
+    private static final int MISSING = -1;
+    private static final int UNKNOWN = -2;
+
+    /**
+     * Looks up a path in the entry index, returns the entry id, {@link #MISSING} if it doesn't exist,
+     * or {@link #UNKNOWN} if the path has to be resolved by the inner file system.
+     */
+    private static int findEntry(ZipEntryIndex index, Path path) {
+        if (!(path instanceof PathPath))
+            return UNKNOWN;
+
+        final String[] parts = ((PathPath)path).getPathParts();
+        boolean empty = true;
+        for (String part : parts) {
+            if (part.equals(PathComponentTable.DOT) || part.equals(PathComponentTable.DOT_DOT) || part.indexOf('/') != -1 || part.indexOf('\\') != -1)
+                return UNKNOWN;
+            empty &= part.isEmpty();
+        }
+
+        return empty ? UNKNOWN : index.find(parts, 0, parts.length);
+    }
+
     @SuppressWarnings("unchecked")
     private static <E extends Throwable, R> R sneak(Exception exception) throws E {
         throw (E) exception;
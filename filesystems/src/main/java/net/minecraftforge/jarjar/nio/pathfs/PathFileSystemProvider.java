@@ -6,8 +6,10 @@ package net.minecraftforge.jarjar.nio.pathfs;
 
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AccessMode;
 import java.nio.file.CopyOption;
@@ -22,9 +24,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileAttribute;
 import java.nio.file.attribute.FileAttributeView;
 import java.nio.file.spi.FileSystemProvider;
-import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -33,7 +33,12 @@ import java.util.Set;
 public class PathFileSystemProvider extends FileSystemProvider {
     protected static final String COMPONENT_SEPERATOR = "~";
     public static final String PATH_SEPERATOR = PathFileSystemProvider.COMPONENT_SEPERATOR + "/";
-    private final Map<String, PathFileSystem> fileSystems = new HashMap<>();
+    /**
+     * Environment key to keep the entry table of archives off-heap, see {@link net.minecraftforge.jarjar.nio.zip.ZipEntryIndex}.
+     * Accepts a Boolean or a String, defaults to the value of the system property with the same name.
+     */
+    public static final String OFF_HEAP_INDEX = "net.minecraftforge.jarjar.nio.offHeapIndex";
+    private final FileSystemRegistry fileSystems = new FileSystemRegistry();
 
     @Override
     public String getScheme() {
@@ -55,11 +60,12 @@ public class PathFileSystemProvider extends FileSystemProvider {
 
         final String key = makeKey(uri);
 
-        if (this.fileSystems.containsKey(key))
-            return this.fileSystems.get(key);
+        final PathFileSystem existing = this.fileSystems.get(key);
+        if (existing != null)
+            return existing;
 
         try {
-            return newFileSystemInternal(key, packagePath);
+            return newFileSystemInternal(key, packagePath, isOffHeapIndex(env));
         } catch (UncheckedIOException e) {
             throw e.getCause();
         }
@@ -79,7 +85,7 @@ public class PathFileSystemProvider extends FileSystemProvider {
 
         final String key = makeKey(path);
         try {
-            return newFileSystemInternal(key, packagePath);
+            return newFileSystemInternal(key, packagePath, isOffHeapIndex(env));
         } catch (UncheckedIOException e) {
             throw e.getCause();
         }
@@ -88,17 +94,20 @@ public class PathFileSystemProvider extends FileSystemProvider {
     public PathFileSystem newFileSystem(final Path path) {
         if (path == null) throw new IllegalArgumentException("Path is null");
         final String key = makeKey(path);
-        return newFileSystemInternal(key, path);
+        return newFileSystemInternal(key, path, isOffHeapIndex(Collections.emptyMap()));
     }
 
-    private PathFileSystem newFileSystemInternal(final String key, final Path path) {
+    private PathFileSystem newFileSystemInternal(final String key, final Path path, final boolean offHeapIndex) {
         final Path normalizedPath = path.toAbsolutePath().normalize();
 
-        synchronized (fileSystems) {
-            final PathFileSystem ufs = new PathFileSystem(this, key, normalizedPath);
-            fileSystems.put(key, ufs);
-            return ufs;
-        }
+        return fileSystems.register(key, () -> new PathFileSystem(this, key, normalizedPath, offHeapIndex));
+    }
+
+    private static boolean isOffHeapIndex(final Map<String, ?> env) {
+        final Object value = env.get(OFF_HEAP_INDEX);
+        if (value == null)
+            return Boolean.getBoolean(OFF_HEAP_INDEX);
+        return value instanceof Boolean ? (Boolean)value : Boolean.parseBoolean(value.toString());
     }
 
     private String makeKey(URI uri) {
@@ -154,7 +163,7 @@ public class PathFileSystemProvider extends FileSystemProvider {
             StringBuilder buf = new StringBuilder();
             buf.append("Unknown FileSystem: ").append(uri);
             buf.append('\n').append("\tOwner: ").append(parts.owner);
-            List<String> sorted = new ArrayList<>(fileSystems.keySet());
+            List<String> sorted = fileSystems.keys();
             Collections.sort(sorted);
             for (String known : sorted)
                 buf.append('\n').append("\tKnown: ").append(known);
@@ -253,9 +262,7 @@ public class PathFileSystemProvider extends FileSystemProvider {
 
     @SuppressWarnings("resource")
     void removeFileSystem(PathFileSystem fs) {
-        synchronized (fileSystems) {
-            fileSystems.remove(fs.getKey());
-        }
+        fileSystems.remove(fs.getKey());
     }
 
     protected URI buildUriFor(final PathPath path) throws URISyntaxException, IllegalArgumentException {
@@ -266,6 +273,24 @@ public class PathFileSystemProvider extends FileSystemProvider {
         );
     }
 
+    /**
+     * Builds the string that {@link #buildUriFor(PathPath)} prefixes to the path, for every path in the specified file
+     * system. The result is cached by the file system, return null if URIs can't be built by concatenation.
+     */
+    protected String buildUriPrefixFor(final PathFileSystem fileSystem) {
+        return null;
+    }
+
+    protected URL buildUrlFor(final PathPath path) throws MalformedURLException {
+        try {
+            return buildUriFor(path).toURL();
+        } catch (URISyntaxException | IllegalArgumentException e) {
+            final MalformedURLException ex = new MalformedURLException(e.getMessage());
+            ex.initCause(e);
+            throw ex;
+        }
+    }
+
     protected Path createSubPath(final PathFileSystem pathFileSystem, final String... args) {
         return new PathPath(pathFileSystem, false, args);
     }
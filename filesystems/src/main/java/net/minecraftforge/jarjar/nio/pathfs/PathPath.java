@@ -7,41 +7,49 @@ package net.minecraftforge.jarjar.nio.pathfs;
 import net.minecraftforge.jarjar.nio.AbstractPath;
 
 import java.io.IOException;
+import java.net.MalformedURLException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.LinkOption;
 import java.nio.file.Path;
 import java.nio.file.WatchEvent;
 import java.nio.file.WatchKey;
 import java.nio.file.WatchService;
-import java.util.ArrayDeque;
 import java.util.Arrays;
-import java.util.Deque;
+import java.util.NoSuchElementException;
 import java.util.Objects;
-import java.util.function.IntBinaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
 public class PathPath extends AbstractPath implements Path {
+    private static final String[] NO_PARTS = new String[0];
+
     private final PathFileSystem fileSystem;
+    // Interned in the file system's PathComponentTable
     private final String[] pathParts;
     public static final String ROOT = "/";
 
     PathPath(final PathFileSystem fileSystem, boolean knownCorrectSplit, final String... pathParts) {
         this.fileSystem = fileSystem;
         if (pathParts.length == 0)
-            this.pathParts = new String[0];
+            this.pathParts = NO_PARTS;
         else if (knownCorrectSplit)
-            this.pathParts = pathParts;
+            this.pathParts = fileSystem.getComponents().intern(pathParts);
         else {
             final String longstring = String.join(fileSystem.getSeparator(), pathParts);
-            this.pathParts = getPathParts(longstring);
+            this.pathParts = fileSystem.getComponents().intern(getPathParts(longstring));
         }
     }
 
     protected PathPath(final PathFileSystem fileSystem, final Path innerPath) {
         this.fileSystem = fileSystem;
-        this.pathParts = innerPath.toString().replace("\\", "/").split("/");
+        this.pathParts = fileSystem.getComponents().intern(innerPath.toString().replace("\\", "/").split("/"));
+    }
+
+    private PathPath(final PathFileSystem fileSystem, final String[] pathParts) {
+        this.fileSystem = fileSystem;
+        this.pathParts = pathParts.length == 0 ? NO_PARTS : pathParts;
     }
 
     private String[] getPathParts(String longstring) {
@@ -57,6 +65,10 @@ public class PathPath extends AbstractPath implements Path {
         return localParts;
     }
 
+    String[] getPathParts() {
+        return this.pathParts;
+    }
+
     @Override
     public PathFileSystem getFileSystem() {
         return this.fileSystem;
@@ -79,13 +91,13 @@ public class PathPath extends AbstractPath implements Path {
             return this.fileSystem.getTarget().getFileName();
         }
 
-        return this.pathParts.length > 0 ? new PathPath(this.getFileSystem(), true, this.pathParts[this.pathParts.length - 1]) : new PathPath(this.fileSystem, true, "");
+        return this.pathParts.length > 0 ? new PathPath(this.getFileSystem(), new String[] {this.pathParts[this.pathParts.length - 1]}) : new PathPath(this.fileSystem, new String[] {PathComponentTable.EMPTY});
     }
 
     @Override
     public Path getParent() {
         if (this.pathParts.length > 0 && !(pathParts.length == 1 && pathParts[0].isEmpty()))
-            return new PathPath(this.fileSystem, true, Arrays.copyOf(this.pathParts, this.pathParts.length - 1));
+            return new PathPath(this.fileSystem, Arrays.copyOf(this.pathParts, this.pathParts.length - 1));
         return null;
     }
 
@@ -98,14 +110,14 @@ public class PathPath extends AbstractPath implements Path {
     public Path getName(final int index) {
         if (index < 0 || index > this.pathParts.length - 1)
             throw new IllegalArgumentException();
-        return new PathPath(this.fileSystem, true, this.pathParts[index]);
+        return new PathPath(this.fileSystem, new String[] {this.pathParts[index]});
     }
 
     @Override
     public Path subpath(final int beginIndex, final int endIndex) {
         if (beginIndex < 0 || beginIndex > this.pathParts.length - 1 || endIndex < 0 || endIndex > this.pathParts.length || beginIndex > endIndex)
             throw new IllegalArgumentException("Out of range " + beginIndex + " to " + endIndex + " for length " + this.pathParts.length);
-        return new PathPath(this.fileSystem, true, Arrays.copyOfRange(this.pathParts, beginIndex, endIndex));
+        return new PathPath(this.fileSystem, Arrays.copyOfRange(this.pathParts, beginIndex, endIndex));
     }
 
     @Override
@@ -137,9 +149,10 @@ public class PathPath extends AbstractPath implements Path {
 
     private static boolean checkArraysMatch(String[] array1, String[] array2, boolean reverse) {
         final int length = Math.min(array1.length, array2.length);
-        IntBinaryOperator offset = reverse ? (l, i) -> l - i - 1 : (l, i) -> i;
         for (int i = 0; i < length; i++) {
-            if (!Objects.equals(array1[offset.applyAsInt(array1.length, i)], array2[offset.applyAsInt(array2.length, i)]))
+            final String a = reverse ? array1[array1.length - i - 1] : array1[i];
+            final String b = reverse ? array2[array2.length - i - 1] : array2[i];
+            if (!a.equals(b))
                 return false;
         }
         return true;
@@ -147,20 +160,23 @@ public class PathPath extends AbstractPath implements Path {
 
     @Override
     public Path normalize() {
-        Deque<String> normpath = new ArrayDeque<>();
+        final String[] normpath = new String[this.pathParts.length];
+        int size = 0;
         for (String pathPart : this.pathParts) {
             switch (pathPart) {
                 case ".":
                     break;
                 case "..":
-                    normpath.removeLast();
+                    if (size == 0)
+                        throw new NoSuchElementException();
+                    size--;
                     break;
                 default:
-                    normpath.addLast(pathPart);
+                    normpath[size++] = pathPart;
                     break;
             }
         }
-        return new PathPath(this.fileSystem, true, normpath.toArray(new String[0]));
+        return new PathPath(this.fileSystem, Arrays.copyOf(normpath, size));
     }
 
     @Override
@@ -190,7 +206,7 @@ public class PathPath extends AbstractPath implements Path {
             final int length = Math.min(this.pathParts.length - meoff, p.pathParts.length - poff);
             int i = 0;
             while (i < length) {
-                if (!Objects.equals(this.pathParts[i + meoff], p.pathParts[i + poff]))
+                if (!this.pathParts[i + meoff].equals(p.pathParts[i + poff]))
                     break;
                 i++;
             }
@@ -221,6 +237,13 @@ public class PathPath extends AbstractPath implements Path {
         }
     }
 
+    /**
+     * Same as {@code toUri().toURL()}, without building and parsing the URI when the provider supports it.
+     */
+    public URL toURL() throws MalformedURLException {
+        return fileSystem.provider().buildUrlFor(this);
+    }
+
     @Override
     public Path toAbsolutePath() {
         if (isAbsolute())
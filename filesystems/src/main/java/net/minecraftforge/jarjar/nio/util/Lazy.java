@@ -8,6 +8,9 @@ import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
+/**
+ * Java 17+ runtimes load the replacement in the {@code java17} source set instead, keep both in sync.
+ */
 public class Lazy<T> {
 
     public static <T> Lazy<T> of() {
@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.zip;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipException;
+
+/**
+ * Low level view of a zip archive's central directory (CEN).
+ * Only the parts of the format needed to locate and describe entries are handled here.
+ */
+final class CentralDirectory {
+    static final int LOCSIG = 0x04034b50;
+    static final int CENSIG = 0x02014b50;
+    static final int ENDSIG = 0x06054b50;
+    static final int ZIP64_ENDSIG = 0x06064b50;
+    static final int ZIP64_LOCSIG = 0x07064b50;
+
+    static final int LOCHDR = 30;
+    static final int CENHDR = 46;
+    static final int ENDHDR = 22;
+    static final int ZIP64_LOCHDR = 20;
+    static final int ZIP64_ENDHDR = 56;
+
+    static final int METHOD_STORED = 0;
+    static final int METHOD_DEFLATED = 8;
+
+    private static final int EXTID_ZIP64 = 0x0001;
+    private static final int EXTID_NTFS = 0x000a;
+    private static final int EXTID_EXTT = 0x5455;
+    private static final long WINDOWS_EPOCH_IN_MICROSECONDS = -11644473600000000L;
+    private static final long ZIP64_MAGICVAL = 0xFFFFFFFFL;
+
+    /** Little endian view of the raw CEN bytes, position 0 is the first header */
+    final ByteBuffer cen;
+    final int entries;
+    /** Offset to add to local header offsets, non zero if the archive has a prefix such as a launcher stub */
+    final long base;
+
+    private CentralDirectory(ByteBuffer cen, int entries, long base) {
+        this.cen = cen;
+        this.entries = entries;
+        this.base = base;
+    }
+
+    static CentralDirectory read(SeekableByteChannel channel, boolean direct) throws IOException {
+        final long size = channel.size();
+        if (size < ENDHDR)
+            throw new ZipException("Archive too small: " + size);
+
+        final int tailLength = (int)Math.min(size, 0xFFFF + ENDHDR);
+        final ByteBuffer tail = readFully(channel, size - tailLength, tailLength, false);
+
+        int end = -1;
+        for (int i = tailLength - ENDHDR; i >= 0; i--) {
+            if (tail.getInt(i) == ENDSIG && i + ENDHDR + (tail.getShort(i + 20) & 0xFFFF) == tailLength) {
+                end = i;
+                break;
+            }
+        }
+        if (end == -1)
+            throw new ZipException("End of central directory not found");
+
+        final long endPos = size - tailLength + end;
+        long entries = tail.getShort(end + 10) & 0xFFFF;
+        long cenSize = tail.getInt(end + 12) & 0xFFFFFFFFL;
+        long cenOff = tail.getInt(end + 16) & 0xFFFFFFFFL;
+        long cenEnd = endPos;
+
+        if ((entries == 0xFFFF || cenSize == ZIP64_MAGICVAL || cenOff == ZIP64_MAGICVAL) && endPos >= ZIP64_LOCHDR) {
+            final ByteBuffer loc = readFully(channel, endPos - ZIP64_LOCHDR, ZIP64_LOCHDR, false);
+            if (loc.getInt(0) == ZIP64_LOCSIG) {
+                final long end64Pos = loc.getLong(8);
+                final ByteBuffer end64 = readFully(channel, end64Pos, ZIP64_ENDHDR, false);
+                if (end64.getInt(0) != ZIP64_ENDSIG)
+                    throw new ZipException("Invalid zip64 end of central directory");
+                entries = end64.getLong(32);
+                cenSize = end64.getLong(40);
+                cenOff = end64.getLong(48);
+                cenEnd = end64Pos;
+            }
+        }
+
+        if (cenSize > Integer.MAX_VALUE || entries > Integer.MAX_VALUE || cenSize > cenEnd)
+            throw new ZipException("Unsupported central directory size: " + cenSize);
+
+        final long cenPos = cenEnd - cenSize;
+        final long base = cenPos - cenOff;
+        if (base < 0)
+            throw new ZipException("Invalid central directory offset: " + cenOff);
+
+        final ByteBuffer cen;
+        if (direct && channel instanceof FileChannel)
+            cen = ((FileChannel)channel).map(FileChannel.MapMode.READ_ONLY, cenPos, cenSize).order(ByteOrder.LITTLE_ENDIAN);
+        else
+            cen = readFully(channel, cenPos, (int)cenSize, direct);
+
+        return new CentralDirectory(cen, (int)entries, base);
+    }
+
+    static ByteBuffer readFully(SeekableByteChannel channel, long position, int length, boolean direct) throws IOException {
+        final ByteBuffer buf = (direct ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length)).order(ByteOrder.LITTLE_ENDIAN);
+        channel.position(position);
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0)
+                throw new EOFException("Unexpected end of archive at " + (position + buf.position()));
+        }
+        buf.flip();
+        return buf;
+    }
+
+    /** Returns the offset of the header following the one at {@code pos} */
+    int next(int pos) {
+        return pos + CENHDR + nameLength(pos) + extraLength(pos) + (cen.getShort(pos + 32) & 0xFFFF);
+    }
+
+    int flags(int pos)       { return cen.getShort(pos + 8) & 0xFFFF; }
+    int method(int pos)      { return cen.getShort(pos + 10) & 0xFFFF; }
+    int dosTime(int pos)     { return cen.getInt(pos + 12); }
+    int crc(int pos)         { return cen.getInt(pos + 16); }
+    int nameLength(int pos)  { return cen.getShort(pos + 28) & 0xFFFF; }
+    int extraLength(int pos) { return cen.getShort(pos + 30) & 0xFFFF; }
+    int nameOffset(int pos)  { return pos + CENHDR; }
+
+    void checkHeader(int pos) throws ZipException {
+        if (pos + CENHDR > cen.limit() || cen.getInt(pos) != CENSIG || next(pos) > cen.limit())
+            throw new ZipException("Invalid central directory header at " + pos);
+    }
+
+    long compressedSize(int pos) { return zip64(pos, 20, 1); }
+    long size(int pos)           { return zip64(pos, 24, 0); }
+    long localOffset(int pos)    { return zip64(pos, 42, 2) + base; }
+
+    /**
+     * Reads a 32 bit header value, resolving it from the zip64 extra field if needed.
+     * The zip64 extra only contains the values that overflowed, in the order size, compressed size, local offset.
+     */
+    private long zip64(int pos, int field, int index) {
+        final long value = cen.getInt(pos + field) & 0xFFFFFFFFL;
+        if (value != ZIP64_MAGICVAL)
+            return value;
+
+        final int extra = extraOffset(pos, EXTID_ZIP64);
+        if (extra == -1)
+            return value;
+
+        int off = extra + 4;
+        if (index > 0 && (cen.getInt(pos + 24) & 0xFFFFFFFFL) == ZIP64_MAGICVAL) off += 8;
+        if (index > 1 && (cen.getInt(pos + 20) & 0xFFFFFFFFL) == ZIP64_MAGICVAL) off += 8;
+        return off + 8 <= extra + 4 + (cen.getShort(extra + 2) & 0xFFFF) ? cen.getLong(off) : value;
+    }
+
+    /** Returns the last modified time, preferring the NTFS or extended timestamp extra fields like ZipFS does */
+    FileTime lastModified(int pos) {
+        int extra = extraOffset(pos, EXTID_NTFS);
+        if (extra != -1) {
+            // Reserved int, then tagged attributes. Tag 1 holds modified, accessed and created as windows file times.
+            final int end = extra + 4 + (cen.getShort(extra + 2) & 0xFFFF);
+            int off = extra + 8;
+            while (off + 4 <= end) {
+                final int tag = cen.getShort(off) & 0xFFFF;
+                final int len = cen.getShort(off + 2) & 0xFFFF;
+                if (tag == 0x0001 && len >= 24 && off + 4 + len <= end)
+                    return FileTime.fromMillis(TimeUnit.MICROSECONDS.toMillis(cen.getLong(off + 4) / 10 + WINDOWS_EPOCH_IN_MICROSECONDS));
+                off += 4 + len;
+            }
+        }
+
+        extra = extraOffset(pos, EXTID_EXTT);
+        if (extra != -1 && (cen.getShort(extra + 2) & 0xFFFF) >= 5 && (cen.get(extra + 4) & 0x1) != 0)
+            return FileTime.from(cen.getInt(extra + 5) & 0xFFFFFFFFL, TimeUnit.SECONDS);
+
+        return FileTime.fromMillis(dosToJavaTime(dosTime(pos)));
+    }
+
+    private int extraOffset(int pos, int id) {
+        int off = nameOffset(pos) + nameLength(pos);
+        final int end = off + extraLength(pos);
+        while (off + 4 <= end) {
+            final int tag = cen.getShort(off) & 0xFFFF;
+            final int len = cen.getShort(off + 2) & 0xFFFF;
+            if (tag == id)
+                return off + 4 + len <= end ? off : -1;
+            off += 4 + len;
+        }
+        return -1;
+    }
+
+    @SuppressWarnings("deprecation")
+    static long dosToJavaTime(int dtime) {
+        return new java.util.Date(
+            ((dtime >> 25) & 0x7f) + 80,
+            ((dtime >> 21) & 0x0f) - 1,
+            (dtime >> 16) & 0x1f,
+            (dtime >> 11) & 0x1f,
+            (dtime >> 5) & 0x3f,
+            (dtime << 1) & 0x3e
+        ).getTime();
+    }
+}
@@ -0,0 +1,408 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.zip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * Reads single entries out of archives nested inside other archives, without opening a file system for any of them.
+ * <p>
+ * Each level only reads the end of central directory, the central directory and the local header of the one entry it needs.
+ * Stored archives are read in place through a window of their parent, deflated ones are inflated into memory.
+ * A {@link Cache} keeps that work between reads, for callers that read many entries of the same nested archive.
+ */
+public final class NestedZipReader {
+    private NestedZipReader() { }
+
+    /**
+     * Reads an entry from an archive nested at any depth inside {@code archive}.
+     * Every name but the last is an archive inside the previous one, the last is the entry to read.
+     * {@code read(outer, "META-INF/jarjar/lib.jar", "META-INF/MANIFEST.MF")} reads the manifest of lib.jar inside outer.
+     *
+     * @return The entry's contents, or null if the entry or one of the archives leading to it doesn't exist.
+     */
+    public static byte[] read(Path archive, String... names) throws IOException {
+        if (names.length == 0)
+            throw new IllegalArgumentException("No entry specified");
+
+        try (SeekableByteChannel channel = Files.newByteChannel(archive)) {
+            return read(channel, names);
+        }
+    }
+
+    /**
+     * Same as {@link #read(Path, String...)}, for an archive readable through a channel. The channel is not closed.
+     */
+    public static byte[] read(SeekableByteChannel channel, String... names) throws IOException {
+        if (names.length == 0)
+            throw new IllegalArgumentException("No entry specified");
+
+        SeekableByteChannel current = channel;
+        for (int x = 0; x < names.length - 1; x++) {
+            final Entry entry = find(CentralDirectory.read(current, false), names[x]);
+            if (entry == null)
+                return null;
+
+            current = entry.open(current, false);
+        }
+
+        final Entry entry = find(CentralDirectory.read(current, false), names[names.length - 1]);
+        return entry == null ? null : entry.read(current);
+    }
+
+    private static Entry find(CentralDirectory cen, String name) throws IOException {
+        byte[] target = name.getBytes(StandardCharsets.UTF_8);
+        if (target.length > 0 && target[0] == '/')
+            target = name.substring(1).getBytes(StandardCharsets.UTF_8);
+
+        int pos = 0;
+        for (int i = 0; i < cen.entries; i++) {
+            cen.checkHeader(pos);
+            if (matches(cen, pos, target)) {
+                if ((cen.flags(pos) & 0x1) != 0)
+                    throw new ZipException("Encrypted entry: " + name);
+                return new Entry(name, cen.method(pos), cen.compressedSize(pos), cen.size(pos), cen.localOffset(pos));
+            }
+            pos = cen.next(pos);
+        }
+        return null;
+    }
+
+    private static boolean matches(CentralDirectory cen, int pos, byte[] target) {
+        if (cen.nameLength(pos) != target.length)
+            return false;
+
+        final int off = cen.nameOffset(pos);
+        for (int x = 0; x < target.length; x++) {
+            if (cen.cen.get(off + x) != target[x])
+                return false;
+        }
+        return true;
+    }
+
+    static final class Entry {
+        private final String name;
+        private final int method;
+        private final long compressedSize;
+        private final long size;
+        private final long localOffset;
+
+        Entry(String name, int method, long compressedSize, long size, long localOffset) {
+            this.name = name;
+            this.method = method;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.localOffset = localOffset;
+        }
+
+        /** The local header has its own name and extra lengths, which don't have to match the central directory */
+        private long dataOffset(SeekableByteChannel channel) throws IOException {
+            final ByteBuffer loc = CentralDirectory.readFully(channel, localOffset, CentralDirectory.LOCHDR, false);
+            if (loc.getInt(0) != CentralDirectory.LOCSIG)
+                throw new ZipException("Invalid local header for " + name);
+            return localOffset + CentralDirectory.LOCHDR + (loc.getShort(26) & 0xFFFF) + (loc.getShort(28) & 0xFFFF);
+        }
+
+        /**
+         * Opens a channel over the entry's contents, in place for stored entries, inflated into memory otherwise.
+         * If {@code owner} is set the archive channel is closed along with the returned one, or right away if it isn't needed anymore.
+         */
+        SeekableByteChannel open(SeekableByteChannel channel, boolean owner) throws IOException {
+            if (method == CentralDirectory.METHOD_STORED)
+                return new WindowChannel(channel, dataOffset(channel), compressedSize, owner);
+
+            final byte[] data = read(channel);
+            if (owner)
+                channel.close();
+            return new BufferChannel(ByteBuffer.wrap(data));
+        }
+
+        private byte[] read(SeekableByteChannel channel) throws IOException {
+            if (size > Integer.MAX_VALUE - 8 || compressedSize > Integer.MAX_VALUE - 8)
+                throw new ZipException("Entry too large: " + name);
+
+            final ByteBuffer data = CentralDirectory.readFully(channel, dataOffset(channel), (int)compressedSize, false);
+            if (method == CentralDirectory.METHOD_STORED)
+                return data.array();
+            if (method != CentralDirectory.METHOD_DEFLATED)
+                throw new ZipException("Unsupported compression method " + method + " for " + name);
+
+            final byte[] ret = new byte[(int)size];
+            final Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data.array(), 0, data.limit());
+                int read = 0;
+                while (read < ret.length) {
+                    final int len = inflater.inflate(ret, read, ret.length - read);
+                    if (len == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary()))
+                        throw new ZipException("Truncated entry: " + name);
+                    read += len;
+                }
+            } catch (DataFormatException e) {
+                throw new ZipException("Invalid deflate data for " + name + ": " + e.getMessage());
+            } finally {
+                inflater.end();
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * Keeps the central directory of every archive read through it, and the contents of every nested archive that had
+     * to be inflated, so reading sibling entries of one nested archive parses and inflates its parents only once.
+     * Everything is kept until {@link #release(Path, String...)} or {@link #clear()}. Safe to use from several threads.
+     */
+    public static final class Cache {
+        private final Map<List<String>, Archive> archives = new ConcurrentHashMap<>();
+
+        /**
+         * Same as {@link NestedZipReader#read(Path, String...)}, keeping every archive on the way for later reads.
+         */
+        public byte[] read(Path archive, String... names) throws IOException {
+            if (names.length == 0)
+                throw new IllegalArgumentException("No entry specified");
+
+            final List<String> key = new ArrayList<>(names.length);
+            key.add(archive.toString());
+            Archive current = archives.computeIfAbsent(new ArrayList<>(key), k -> new Archive(archive, null, 0, 0, null));
+            for (int x = 0; x < names.length - 1; x++) {
+                key.add(names[x]);
+                current = nested(current, key, names[x]);
+                if (current == null)
+                    return null;
+            }
+
+            try (SeekableByteChannel channel = current.open()) {
+                final Entry entry = find(current.cen(channel), names[names.length - 1]);
+                return entry == null ? null : entry.read(channel);
+            }
+        }
+
+        /**
+         * Drops the specified archive, nested in {@code archive} through {@code names}, and everything kept for archives inside it.
+         */
+        public void release(Path archive, String... names) {
+            final List<String> prefix = new ArrayList<>(names.length + 1);
+            prefix.add(archive.toString());
+            Collections.addAll(prefix, names);
+            archives.keySet().removeIf(key -> key.size() >= prefix.size() && key.subList(0, prefix.size()).equals(prefix));
+        }
+
+        public void clear() {
+            archives.clear();
+        }
+
+        int size() {
+            return archives.size();
+        }
+
+        private Archive nested(Archive parent, List<String> key, String name) throws IOException {
+            final Archive existing = archives.get(key);
+            if (existing != null)
+                return existing;
+
+            final Archive created;
+            try (SeekableByteChannel channel = parent.open()) {
+                final Entry entry = find(parent.cen(channel), name);
+                if (entry == null)
+                    return null;
+
+                if (entry.method == CentralDirectory.METHOD_STORED)
+                    created = new Archive(parent.file, parent, entry.dataOffset(channel), entry.compressedSize, null);
+                else
+                    created = new Archive(parent.file, null, 0, 0, entry.read(channel));
+            }
+
+            // Another thread may have opened the same archive meanwhile, keep whichever got there first
+            final Archive raced = archives.putIfAbsent(new ArrayList<>(key), created);
+            return raced == null ? created : raced;
+        }
+    }
+
+    /**
+     * An archive kept by a {@link Cache}: the file on disk, a stored entry read in place from its parent, or the inflated contents of a deflated one.
+     */
+    private static final class Archive {
+        private final Path file;
+        private final Archive parent;
+        private final long offset;
+        private final long size;
+        private final byte[] data;
+        private volatile CentralDirectory cen;
+
+        private Archive(Path file, Archive parent, long offset, long size, byte[] data) {
+            this.file = file;
+            this.parent = parent;
+            this.offset = offset;
+            this.size = size;
+            this.data = data;
+        }
+
+        private SeekableByteChannel open() throws IOException {
+            if (data != null)
+                return new BufferChannel(ByteBuffer.wrap(data));
+            if (parent == null)
+                return Files.newByteChannel(file);
+            return new WindowChannel(parent.open(), offset, size, true);
+        }
+
+        private CentralDirectory cen(SeekableByteChannel channel) throws IOException {
+            CentralDirectory ret = cen;
+            if (ret == null)
+                cen = ret = CentralDirectory.read(channel, false);
+            return ret;
+        }
+    }
+
+    /**
+     * Read only view of a range of another channel. Closing it only closes the parent if the window owns it.
+     */
+    private static final class WindowChannel implements SeekableByteChannel {
+        private final SeekableByteChannel parent;
+        private final long offset;
+        private final long size;
+        private final boolean owner;
+        private long position;
+        private boolean open = true;
+
+        private WindowChannel(SeekableByteChannel parent, long offset, long size, boolean owner) {
+            this.parent = parent;
+            this.offset = offset;
+            this.size = size;
+            this.owner = owner;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (position >= size)
+                return -1;
+
+            final int limit = dst.limit();
+            final long remaining = size - position;
+            if (dst.remaining() > remaining)
+                dst.limit(dst.position() + (int)remaining);
+
+            try {
+                parent.position(offset + position);
+                final int read = parent.read(dst);
+                if (read > 0)
+                    position += read;
+                return read;
+            } finally {
+                dst.limit(limit);
+            }
+        }
+
+        @Override
+        public long position() throws IOException {
+            ensureOpen();
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0)
+                throw new IllegalArgumentException("Negative position: " + newPosition);
+            position = newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            ensureOpen();
+            return size;
+        }
+
+        @Override public int write(ByteBuffer src) { throw new NonWritableChannelException(); }
+        @Override public SeekableByteChannel truncate(long size) { throw new NonWritableChannelException(); }
+        @Override public boolean isOpen() { return open; }
+
+        @Override
+        public void close() throws IOException {
+            if (open && owner)
+                parent.close();
+            open = false;
+        }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open)
+                throw new ClosedChannelException();
+        }
+    }
+
+    /**
+     * Read only channel over an in memory buffer.
+     */
+    private static final class BufferChannel implements SeekableByteChannel {
+        private final ByteBuffer data;
+        private boolean open = true;
+
+        private BufferChannel(ByteBuffer data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            ensureOpen();
+            if (!data.hasRemaining())
+                return -1;
+
+            final int len = Math.min(dst.remaining(), data.remaining());
+            final ByteBuffer slice = data.duplicate();
+            slice.limit(slice.position() + len);
+            dst.put(slice);
+            data.position(data.position() + len);
+            return len;
+        }
+
+        @Override
+        public long position() throws IOException {
+            ensureOpen();
+            return data.position();
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) throws IOException {
+            ensureOpen();
+            if (newPosition < 0)
+                throw new IllegalArgumentException("Negative position: " + newPosition);
+            data.position((int)Math.min(newPosition, data.limit()));
+            return this;
+        }
+
+        @Override
+        public long size() throws IOException {
+            ensureOpen();
+            return data.limit();
+        }
+
+        @Override public int write(ByteBuffer src) { throw new NonWritableChannelException(); }
+        @Override public SeekableByteChannel truncate(long size) { throw new NonWritableChannelException(); }
+        @Override public boolean isOpen() { return open; }
+        @Override public void close() { open = false; }
+
+        private void ensureOpen() throws ClosedChannelException {
+            if (!open)
+                throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,472 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.zip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.zip.ZipException;
+
+/**
+ * Read only entry table for a zip archive which keeps everything off-heap.
+ * <p>
+ * Each entry is a fixed size record in a direct buffer, and lookups go through an open addressing table of record
+ * indexes. Names are never decoded, they are compared against the raw central directory which stays mapped (or
+ * copied into a direct buffer when the archive isn't a plain file). Directories which only exist implicitly as a
+ * parent of some entry get synthetic records pointing at a prefix of that entry's name. Every record is also linked
+ * to the next one in its directory, so listings and reads can be served without building a file system.
+ * <p>
+ * Lookups of ASCII names allocate nothing. Instances are immutable once built, and safe to share between threads.
+ */
+public final class ZipEntryIndex {
+    // Record layout: hash, cen header position, name offset, name length, flags, first child, next sibling
+    private static final int REC_HASH = 0;
+    private static final int REC_CEN = 4;
+    private static final int REC_NAME = 8;
+    private static final int REC_NAME_LEN = 12;
+    private static final int REC_FLAGS = 14;
+    private static final int REC_CHILD = 16;
+    private static final int REC_SIBLING = 20;
+    private static final int RECORD_SIZE = 24;
+
+    private static final int FLAG_DIRECTORY = 0x1;
+    private static final int FLAG_SYNTHETIC = 0x2;
+
+    private final CentralDirectory cen;
+    private final FileTime created = FileTime.fromMillis(System.currentTimeMillis());
+    private ByteBuffer records;
+    private ByteBuffer slots;
+    private int mask;
+    private int count;
+    private int rootChild = -1;
+
+    private ZipEntryIndex(CentralDirectory cen) {
+        this.cen = cen;
+        int expected = cen.entries + (cen.entries >> 2) + 16;
+        this.records = ByteBuffer.allocateDirect(expected * RECORD_SIZE).order(ByteOrder.nativeOrder());
+        int capacity = Integer.highestOneBit(expected * 2 - 1) << 1;
+        this.slots = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder());
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Builds an index from the central directory of the archive readable through the specified channel.
+     * The channel is only used during this call, and may be closed afterwards.
+     */
+    public static ZipEntryIndex build(SeekableByteChannel channel) throws IOException {
+        final CentralDirectory cen = CentralDirectory.read(channel, true);
+        final ZipEntryIndex index = new ZipEntryIndex(cen);
+
+        int pos = 0;
+        for (int i = 0; i < cen.entries; i++) {
+            cen.checkHeader(pos);
+            final int nameOff = cen.nameOffset(pos);
+            int nameLen = cen.nameLength(pos);
+            int flags = 0;
+            if (nameLen > 0 && cen.cen.get(nameOff + nameLen - 1) == '/') {
+                nameLen--;
+                flags |= FLAG_DIRECTORY;
+            }
+
+            if (nameLen > 0) {
+                index.insert(pos, nameOff, nameLen, flags);
+
+                // Add any parent directories, the zip format doesn't require them to have their own entries.
+                // Walk from the deepest parent, once one exists all of its parents are known to exist as well.
+                for (int end = nameLen - 1; end > 0; end--) {
+                    if (cen.cen.get(nameOff + end) != '/')
+                        continue;
+                    if (index.find(nameOff, end, hash(cen.cen, nameOff, end)) != -1)
+                        break;
+                    index.insert(-1, nameOff, end, FLAG_DIRECTORY | FLAG_SYNTHETIC);
+                }
+            }
+
+            pos = cen.next(pos);
+        }
+
+        index.link();
+        return index;
+    }
+
+    /** Number of entries, including synthetic directories */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Finds the entry with the specified name, leading and trailing slashes are ignored.
+     * Returns the entry id, or -1 if there is no such entry.
+     */
+    public int find(String name) {
+        int start = 0, end = name.length();
+        while (start < end && name.charAt(start) == '/') start++;
+        while (end > start && name.charAt(end - 1) == '/') end--;
+        if (start == end)
+            return -1;
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            final char c = name.charAt(i);
+            if (c >= 0x80)
+                return findEncoded(name.substring(start, end));
+            hash = 31 * hash + c;
+        }
+
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int rec = slots.getInt(slot * 4) - 1;
+            if (rec < 0)
+                return -1;
+            if (hashOf(rec) == hash && nameLengthOf(rec) == end - start && regionMatches(nameOffsetOf(rec), name, start, end))
+                return rec;
+        }
+    }
+
+    /**
+     * Finds the entry whose name is the specified components joined by slashes, empty components are skipped.
+     * This lets callers that already have a split path look it up without building the name.
+     * Returns the entry id, or -1 if there is no such entry.
+     */
+    public int find(String[] parts, int from, int to) {
+        int hash = 0, length = 0;
+        for (int i = from; i < to; i++) {
+            final String part = parts[i];
+            if (part.isEmpty())
+                continue;
+            if (length != 0) {
+                hash = 31 * hash + '/';
+                length++;
+            }
+            for (int j = 0; j < part.length(); j++) {
+                final char c = part.charAt(j);
+                if (c >= 0x80)
+                    return find(join(parts, from, to));
+                hash = 31 * hash + c;
+            }
+            length += part.length();
+        }
+
+        if (length == 0)
+            return -1;
+
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int rec = slots.getInt(slot * 4) - 1;
+            if (rec < 0)
+                return -1;
+            if (hashOf(rec) == hash && nameLengthOf(rec) == length && regionMatches(nameOffsetOf(rec), parts, from, to))
+                return rec;
+        }
+    }
+
+    /**
+     * Returns the first entry directly inside a directory entry, or inside the root of the archive if {@code entry} is -1.
+     * Returns -1 if the directory is empty.
+     */
+    public int getFirstChild(int entry) {
+        return entry == -1 ? rootChild : records.getInt(entry * RECORD_SIZE + REC_CHILD);
+    }
+
+    /** Returns the next entry in the same directory, or -1 if this is the last one */
+    public int getNextSibling(int entry) {
+        return records.getInt(entry * RECORD_SIZE + REC_SIBLING);
+    }
+
+    public boolean isDirectory(int entry) {
+        return (flagsOf(entry) & FLAG_DIRECTORY) != 0;
+    }
+
+    /** Returns true if this directory has no entry of its own, and only exists because it has children */
+    public boolean isSynthetic(int entry) {
+        return (flagsOf(entry) & FLAG_SYNTHETIC) != 0;
+    }
+
+    public String getName(int entry) {
+        final int off = nameOffsetOf(entry);
+        final int len = nameLengthOf(entry);
+        final byte[] data = new byte[len];
+        for (int i = 0; i < len; i++)
+            data[i] = cen.cen.get(off + i);
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    public long getSize(int entry) {
+        return isSynthetic(entry) ? 0 : cen.size(cenOf(entry));
+    }
+
+    public long getCompressedSize(int entry) {
+        return isSynthetic(entry) ? 0 : cen.compressedSize(cenOf(entry));
+    }
+
+    public long getCrc(int entry) {
+        return isSynthetic(entry) ? 0 : cen.crc(cenOf(entry)) & 0xFFFFFFFFL;
+    }
+
+    public int getMethod(int entry) {
+        return isSynthetic(entry) ? CentralDirectory.METHOD_STORED : cen.method(cenOf(entry));
+    }
+
+    /** Returns the offset of the entry's local header from the start of the archive, or -1 for synthetic directories */
+    public long getLocalHeaderOffset(int entry) {
+        return isSynthetic(entry) ? -1 : cen.localOffset(cenOf(entry));
+    }
+
+    public FileTime getLastModifiedTime(int entry) {
+        return isSynthetic(entry) ? created : cen.lastModified(cenOf(entry));
+    }
+
+    public BasicFileAttributes readAttributes(int entry) {
+        return new EntryAttributes(this, entry);
+    }
+
+    /**
+     * Opens a read only channel over the contents of a file entry, {@code archive} must be the archive this index was built from.
+     * Stored entries are read in place, deflated ones are inflated into memory.
+     */
+    public SeekableByteChannel newByteChannel(int entry, Path archive) throws IOException {
+        if (isDirectory(entry))
+            throw new FileSystemException(getName(entry), null, "Is a directory");
+
+        final int pos = cenOf(entry);
+        if ((cen.flags(pos) & 0x1) != 0)
+            throw new ZipException("Encrypted entry: " + getName(entry));
+
+        final NestedZipReader.Entry data = new NestedZipReader.Entry(getName(entry), cen.method(pos), cen.compressedSize(pos), cen.size(pos), cen.localOffset(pos));
+        final SeekableByteChannel channel = Files.newByteChannel(archive, StandardOpenOption.READ);
+        try {
+            return data.open(channel, true);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private void insert(int cenPos, int nameOff, int nameLen, int flags) {
+        final int hash = hash(cen.cen, nameOff, nameLen);
+        final int existing = find(nameOff, nameLen, hash);
+        if (existing != -1) {
+            // Later entries win, but a real entry always beats a synthetic one
+            if ((flags & FLAG_SYNTHETIC) == 0)
+                writeRecord(existing, hash, cenPos, nameOff, nameLen, flags);
+            return;
+        }
+
+        if ((count + 1) * 2 > mask + 1)
+            rehash();
+
+        if ((count + 1) * RECORD_SIZE > records.capacity()) {
+            final ByteBuffer grown = ByteBuffer.allocateDirect(records.capacity() * 2).order(ByteOrder.nativeOrder());
+            final ByteBuffer old = records.duplicate();
+            old.position(0).limit(count * RECORD_SIZE);
+            grown.put(old);
+            records = grown;
+        }
+
+        final int rec = count++;
+        writeRecord(rec, hash, cenPos, nameOff, nameLen, flags);
+        place(rec, hash);
+    }
+
+    private void writeRecord(int rec, int hash, int cenPos, int nameOff, int nameLen, int flags) {
+        final int base = rec * RECORD_SIZE;
+        records.putInt(base + REC_HASH, hash);
+        records.putInt(base + REC_CEN, cenPos);
+        records.putInt(base + REC_NAME, nameOff);
+        records.putShort(base + REC_NAME_LEN, (short)nameLen);
+        records.putShort(base + REC_FLAGS, (short)flags);
+    }
+
+    /** Links every record into its parent's list of children, keeping the order of the central directory */
+    private void link() {
+        for (int rec = 0; rec < count; rec++)
+            records.putInt(rec * RECORD_SIZE + REC_CHILD, -1);
+
+        for (int rec = count - 1; rec >= 0; rec--) {
+            final int off = nameOffsetOf(rec);
+            int end = nameLengthOf(rec) - 1;
+            while (end > 0 && cen.cen.get(off + end) != '/')
+                end--;
+
+            final int parent = end <= 0 ? -1 : find(off, end, hash(cen.cen, off, end));
+            records.putInt(rec * RECORD_SIZE + REC_SIBLING, getFirstChild(parent));
+            if (parent == -1)
+                rootChild = rec;
+            else
+                records.putInt(parent * RECORD_SIZE + REC_CHILD, rec);
+        }
+    }
+
+    private void place(int rec, int hash) {
+        int slot = spread(hash) & mask;
+        while (slots.getInt(slot * 4) != 0)
+            slot = (slot + 1) & mask;
+        slots.putInt(slot * 4, rec + 1);
+    }
+
+    private void rehash() {
+        final int capacity = (mask + 1) * 2;
+        slots = ByteBuffer.allocateDirect(capacity * 4).order(ByteOrder.nativeOrder());
+        mask = capacity - 1;
+        for (int rec = 0; rec < count; rec++)
+            place(rec, hashOf(rec));
+    }
+
+    private int find(int nameOff, int nameLen, int hash) {
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int rec = slots.getInt(slot * 4) - 1;
+            if (rec < 0)
+                return -1;
+            if (hashOf(rec) == hash && nameLengthOf(rec) == nameLen && regionMatches(nameOffsetOf(rec), nameOff, nameLen))
+                return rec;
+        }
+    }
+
+    private int findEncoded(String name) {
+        final byte[] data = name.getBytes(StandardCharsets.UTF_8);
+        int hash = 0;
+        for (byte b : data)
+            hash = 31 * hash + (b & 0xFF);
+
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            final int rec = slots.getInt(slot * 4) - 1;
+            if (rec < 0)
+                return -1;
+            if (hashOf(rec) != hash || nameLengthOf(rec) != data.length)
+                continue;
+
+            final int off = nameOffsetOf(rec);
+            int i = 0;
+            while (i < data.length && cen.cen.get(off + i) == data[i])
+                i++;
+            if (i == data.length)
+                return rec;
+        }
+    }
+
+    private boolean regionMatches(int off, int other, int len) {
+        for (int i = 0; i < len; i++) {
+            if (cen.cen.get(off + i) != cen.cen.get(other + i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int off, String name, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (cen.cen.get(off++) != name.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    private boolean regionMatches(int off, String[] parts, int from, int to) {
+        boolean first = true;
+        for (int i = from; i < to; i++) {
+            final String part = parts[i];
+            if (part.isEmpty())
+                continue;
+            if (!first && cen.cen.get(off++) != '/')
+                return false;
+            first = false;
+            for (int j = 0; j < part.length(); j++) {
+                if (cen.cen.get(off++) != part.charAt(j))
+                    return false;
+            }
+        }
+        return true;
+    }
+
+    private int hashOf(int rec)        { return records.getInt(rec * RECORD_SIZE + REC_HASH); }
+    private int cenOf(int rec)         { return records.getInt(rec * RECORD_SIZE + REC_CEN); }
+    private int nameOffsetOf(int rec)  { return records.getInt(rec * RECORD_SIZE + REC_NAME); }
+    private int nameLengthOf(int rec)  { return records.getShort(rec * RECORD_SIZE + REC_NAME_LEN) & 0xFFFF; }
+    private int flagsOf(int rec)       { return records.getShort(rec * RECORD_SIZE + REC_FLAGS) & 0xFFFF; }
+
+    /** Same as {@link String#hashCode()} for ASCII names, so both sides of a lookup agree without decoding */
+    private static int hash(ByteBuffer buf, int off, int len) {
+        int hash = 0;
+        for (int i = 0; i < len; i++)
+            hash = 31 * hash + (buf.get(off + i) & 0xFF);
+        return hash;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String join(String[] parts, int from, int to) {
+        final StringBuilder buf = new StringBuilder();
+        for (int i = from; i < to; i++) {
+            if (parts[i].isEmpty())
+                continue;
+            if (buf.length() != 0)
+                buf.append('/');
+            buf.append(parts[i]);
+        }
+        return buf.toString();
+    }
+
+    private static final class EntryAttributes implements BasicFileAttributes {
+        private final ZipEntryIndex index;
+        private final int entry;
+
+        private EntryAttributes(ZipEntryIndex index, int entry) {
+            this.index = index;
+            this.entry = entry;
+        }
+
+        @Override
+        public FileTime lastModifiedTime() {
+            return index.getLastModifiedTime(entry);
+        }
+
+        @Override
+        public FileTime lastAccessTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public FileTime creationTime() {
+            return lastModifiedTime();
+        }
+
+        @Override
+        public boolean isRegularFile() {
+            return !index.isDirectory(entry);
+        }
+
+        @Override
+        public boolean isDirectory() {
+            return index.isDirectory(entry);
+        }
+
+        @Override
+        public boolean isSymbolicLink() {
+            return false;
+        }
+
+        @Override
+        public boolean isOther() {
+            return false;
+        }
+
+        @Override
+        public long size() {
+            return index.getSize(entry);
+        }
+
+        @Override
+        public Object fileKey() {
+            return null;
+        }
+    }
+}
@@ -4,21 +4,29 @@
  */
 package net.minecraftforge.jarjar.nio.layfs;
 
+import net.minecraftforge.jarjar.nio.pathfs.PathFileSystem;
+import net.minecraftforge.jarjar.nio.pathfs.PathPath;
 import org.junit.jupiter.api.Test;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.net.URL;
 import java.nio.file.*;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
 
 @SuppressWarnings("resource")
 public class TestLayeredZipFS
 {
+    static {
+        // There is no jij URL handler outside of a launcher, use the one next to this test
+        System.setProperty("java.protocol.handler.pkgs", "net.minecraftforge.jarjar.nio.layfs");
+    }
 
     @Test
     public void testUriParsingAndAccess() throws URISyntaxException, IOException
@@ -150,4 +158,67 @@ public class TestLayeredZipFS
 
         assertNotEquals(rootPathInFs.getFileSystem(), secondLayerZipPath.getFileSystem());
     }
+
+    @Test
+    public void testCachedUriMatchesUncached() throws URISyntaxException, IOException {
+        final URI filePathUri = new URI(
+          "jij:src/test/resources/dir_in_dir_in_dir.zip~/dir_in_dir.zip~/dir1.zip"
+        ).normalize();
+        final FileSystem zipFS = FileSystems.newFileSystem(filePathUri, new HashMap<>());
+        assertNotNull(((PathFileSystem) zipFS).getUriPrefix());
+
+        assertUriMatchesUncached(zipFS, "/", "/masktest.txt", "/subdir1/masktestsd1.txt", "relative.txt", "/with~tilde.txt", "/ends_with~");
+    }
+
+    @Test
+    public void testCachedPrefixEndingWithSlash() throws URISyntaxException, IOException {
+        // A directory target's URI ends with a slash, so paths join it with a double slash
+        final URI dirUri = new URI(
+          "jij:" + Paths.get("src/test/resources").toAbsolutePath().toUri().getRawSchemeSpecificPart()
+        );
+        final FileSystem dirFS = FileSystems.newFileSystem(dirUri, new HashMap<>());
+        assertTrue(((PathFileSystem) dirFS).getUriPrefix().endsWith("/"));
+
+        assertUriMatchesUncached(dirFS, "/", "/dir1.zip", "/with~tilde.txt");
+    }
+
+    @Test
+    public void testUncachedPrefixEndingWithSeparator() throws URISyntaxException, IOException {
+        final URI filePathUri = new URI(
+          "jij:src/test/resources/dir_in_dir_in_dir.zip~/dir_in_dir.zip~/"
+        ).normalize();
+        final FileSystem outerFS = FileSystems.newFileSystem(filePathUri, new HashMap<>());
+
+        final Map<String, Object> env = new HashMap<>();
+        env.put("packagePath", outerFS.getPath("/ends_with~"));
+        final FileSystem tildeFS = FileSystems.newFileSystem(new URI("jij:ends_with_separator_test"), env);
+        assertNull(((PathFileSystem) tildeFS).getUriPrefix());
+
+        assertUriMatchesUncached(tildeFS, "/", "/masktest.txt", "/with~tilde.txt");
+    }
+
+    private static void assertUriMatchesUncached(final FileSystem fileSystem, final String... paths) throws URISyntaxException, IOException {
+        for (final String name : paths) {
+            final Path path = fileSystem.getPath(name);
+            final URI expected = URI.create(uncachedUri(path));
+            final URL expectedUrl = expected.toURL();
+
+            assertEquals(expected.toString(), path.toUri().toString(), name);
+            assertEquals(expectedUrl.toString(), ((PathPath) path).toURL().toString(), name);
+            assertEquals(expectedUrl, ((PathPath) path).toURL(), name);
+        }
+    }
+
+    /** How the layered provider built URIs before the prefix was cached */
+    private static String uncachedUri(final Path path) {
+        final PathFileSystem fileSystem = (PathFileSystem) path.getFileSystem();
+        return ("jij:" + uncachedPrefix(fileSystem.getTarget()) + path).replace("~//", "~/");
+    }
+
+    private static String uncachedPrefix(final Path path) {
+        if (path instanceof PathPath)
+            return uncachedPrefix(((PathPath) path).getFileSystem().getTarget()) + "~/" + path.toAbsolutePath();
+
+        return path.toAbsolutePath().toUri().getRawSchemeSpecificPart();
+    }
 }
@@ -0,0 +1,19 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.layfs.jij;
+
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+
+/**
+ * Lets tests build jij URLs, found through the java.protocol.handler.pkgs property. Never opens them.
+ */
+public class Handler extends URLStreamHandler {
+    @Override
+    protected URLConnection openConnection(URL url) {
+        throw new UnsupportedOperationException();
+    }
+}
@@ -10,9 +10,13 @@ import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.*;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -326,6 +330,142 @@ public class TestPathFS
         assertEquals("subdir1",pathInPathFS.toString());
     }
 
+    @Test
+    public void internedPathsCompareByComponent() throws URISyntaxException, IOException
+    {
+        final Path target =  Paths.get("src", "test", "resources", "dir1.zip");
+
+        final URI pathFsUri = new URI("path://interned");
+        final Map<String, ?> args = createMap("packagePath", target);
+
+        final FileSystem pathFS = FileSystems.newFileSystem(pathFsUri, args);
+
+        final Path direct = pathFS.getPath("/subdir1/masktestsd1.txt");
+        final Path built = pathFS.getPath("/subdir1").resolve("masktestsd1.txt");
+        final Path dotted = pathFS.getPath("/subdir1/./other/../masktestsd1.txt").normalize();
+
+        assertEquals(direct, built);
+        assertEquals(direct.hashCode(), built.hashCode());
+        assertEquals(direct, dotted);
+        assertEquals(direct.toString(), dotted.toString());
+        assertTrue(direct.startsWith(pathFS.getPath("/subdir1")));
+        assertTrue(direct.endsWith(pathFS.getPath("masktestsd1.txt")));
+        assertEquals("masktestsd1.txt", direct.getFileName().toString());
+    }
+
+    @Test
+    public void componentTableSharesEqualNames()
+    {
+        final PathComponentTable table = new PathComponentTable();
+        final String first = new String("masktestsd1.txt");
+        final String second = new String("masktestsd1.txt");
+
+        assertSame(first, table.intern(first));
+        assertSame(first, table.intern(second));
+        assertSame(PathComponentTable.EMPTY, table.intern(new String("")));
+    }
+
+    @Test
+    public void componentTableSharesNamesAcrossThreads() throws Exception
+    {
+        final PathComponentTable table = new PathComponentTable();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<String[]>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                results.add(executor.submit(() -> {
+                    final String[] ret = new String[100];
+                    for (int j = 0; j < ret.length; j++)
+                        ret[j] = table.intern(new String("name" + j));
+                    return ret;
+                }));
+            }
+
+            final String[] first = results.get(0).get();
+            for (Future<String[]> result : results) {
+                final String[] names = result.get();
+                for (int j = 0; j < names.length; j++)
+                    assertSame(first[j], names[j]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void registryKeepsConcurrentRegistrations() throws Exception
+    {
+        final PathFileSystem fileSystem = new PathFileSystemProvider().newFileSystem(Paths.get("src", "test", "resources", "dir1.zip"));
+        final FileSystemRegistry registry = new FileSystemRegistry();
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<?>> results = new ArrayList<>();
+            for (int i = 0; i < 8; i++) {
+                final int thread = i;
+                results.add(executor.submit(() -> {
+                    for (int j = 0; j < 100; j++) {
+                        final String key = thread + "/" + j;
+                        assertSame(fileSystem, registry.register(key, () -> fileSystem));
+                        assertSame(fileSystem, registry.get(key));
+                    }
+                }));
+            }
+            for (Future<?> result : results)
+                result.get();
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(800, registry.keys().size());
+        registry.remove("0/0");
+        assertNull(registry.get("0/0"));
+        assertEquals(799, registry.keys().size());
+    }
+
+    @Test
+    public void offHeapIndexServesReadsWithoutInnerSystem() throws URISyntaxException, IOException
+    {
+        for (String name : new String[] {"dir1.zip", "dir_in_dir_in_dir.zip"})
+        {
+            final Path target =  Paths.get("src", "test", "resources", name);
+
+            final Map<String, Object> args = createMap("packagePath", target);
+            args.put(PathFileSystemProvider.OFF_HEAP_INDEX, true);
+
+            try (FileSystem jarFS = FileSystems.newFileSystem(URI.create("jar:" + target.toUri()), new HashMap<>());
+                 FileSystem pathFS = FileSystems.newFileSystem(new URI("path://offheap_" + name), args))
+            {
+                // The root of a PathFS reports the attributes of its target, so walk from the listing instead
+                final List<String> expected = listFiles(jarFS.getPath("/"), new ArrayList<>());
+                final List<String> actual = listFiles(pathFS.getPath("/"), new ArrayList<>());
+                assertFalse(expected.isEmpty(), name);
+                assertEquals(expected, actual, name);
+
+                for (String entry : expected)
+                    assertArrayEquals(Files.readAllBytes(jarFS.getPath(entry)), Files.readAllBytes(pathFS.getPath(entry)), entry);
+
+                assertThrows(NoSuchFileException.class, () -> Files.readAllBytes(pathFS.getPath("/missing.txt")));
+                assertFalse(((PathFileSystem)pathFS).isInnerSystemOpened(), "Reads should be served by the entry index");
+            }
+        }
+    }
+
+    private static List<String> listFiles(final Path dir, final List<String> files) throws IOException
+    {
+        try (DirectoryStream<Path> children = Files.newDirectoryStream(dir))
+        {
+            for (Path child : children)
+            {
+                if (Files.isDirectory(child))
+                    listFiles(child, files);
+                else
+                    files.add(child.toString().replaceFirst("^/", ""));
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
     private static Map<String, Object> createMap(final String key, final Object o) {
         final HashMap<String, Object> map = new HashMap<>();
         map.put(key, o);
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestLazy {
+    @Test
+    public void loadsTheExpectedImplementation() throws NoSuchFieldException {
+        // Set by the testMultiRelease suite, which runs against the multi-release jar on Java 17
+        final boolean multiRelease = Boolean.getBoolean("net.minecraftforge.jarjar.test.multiRelease");
+        assertEquals(multiRelease, Lazy.class.getDeclaredField("lock").getType() == ReentrantLock.class);
+    }
+
+    @Test
+    public void computesOnceAcrossThreads() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Lazy<Object> lazy = Lazy.of(() -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+
+        final ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            final List<Future<Object>> results = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return lazy.get();
+                }));
+            }
+            start.countDown();
+
+            final Object value = results.get(0).get();
+            for (Future<Object> result : results)
+                assertSame(value, result.get());
+            assertEquals(1, calls.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void onlyReportsComputedValues() {
+        final Lazy<String> lazy = Lazy.of(() -> "value");
+        final List<String> seen = new ArrayList<>();
+
+        assertEquals("else", lazy.orElse("else"));
+        lazy.ifPresent(seen::add);
+        assertTrue(seen.isEmpty());
+
+        assertEquals("VALUE", lazy.map(String::toUpperCase).get());
+        assertEquals("value", lazy.orElse("else"));
+        lazy.ifPresent(seen::add);
+        assertEquals(1, seen.size());
+
+        assertEquals("given", Lazy.of("given").orElse("else"));
+        assertNull(Lazy.of().get());
+    }
+
+    @Test
+    public void failedComputationsAreNotRetried() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Lazy<String> lazy = Lazy.of(() -> {
+            calls.incrementAndGet();
+            throw new IllegalStateException();
+        });
+
+        assertThrows(IllegalStateException.class, lazy::get);
+        assertNull(lazy.get());
+        assertEquals(1, calls.get());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.zip;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.file.*;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestNestedZipReader {
+    private static final Path ROOT = Paths.get("src/test/resources");
+
+    @Test
+    public void readsFromOuterArchive() throws IOException {
+        assertArrayEquals(expected("masktest.txt"), NestedZipReader.read(ROOT.resolve("dir1.zip"), "masktest.txt"));
+        assertArrayEquals(new byte[0], NestedZipReader.read(ROOT.resolve("dir1.zip"), "/subdir1/masktestsd1.txt"));
+        assertNull(NestedZipReader.read(ROOT.resolve("dir1.zip"), "missing.txt"));
+    }
+
+    @Test
+    public void readsFromNestedArchives() throws IOException {
+        final byte[] expected = expected("masktest.txt");
+        assertArrayEquals(expected, NestedZipReader.read(ROOT.resolve("dir_in_dir.zip"), "dir1.zip", "masktest.txt"));
+        assertArrayEquals(expected, NestedZipReader.read(ROOT.resolve("dir_in_dir_in_dir.zip"), "dir_in_dir.zip", "dir1.zip", "masktest.txt"));
+        assertArrayEquals(Files.readAllBytes(ROOT.resolve("dir1.zip")), NestedZipReader.read(ROOT.resolve("dir_in_dir.zip"), "dir1.zip"));
+
+        assertNull(NestedZipReader.read(ROOT.resolve("dir_in_dir_in_dir.zip"), "missing.zip", "dir1.zip", "masktest.txt"));
+        assertNull(NestedZipReader.read(ROOT.resolve("dir_in_dir_in_dir.zip"), "dir_in_dir.zip", "dir1.zip", "missing.txt"));
+    }
+
+    @Test
+    public void readsStoredArchivesInPlace() throws IOException {
+        final byte[] inner = Files.readAllBytes(ROOT.resolve("dir1.zip"));
+        final CRC32 crc = new CRC32();
+        crc.update(inner);
+
+        final Path outer = Files.createTempFile("nested", ".zip");
+        try {
+            try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(outer))) {
+                final ZipEntry entry = new ZipEntry("META-INF/jarjar/dir1.zip");
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(inner.length);
+                entry.setCrc(crc.getValue());
+                zip.putNextEntry(entry);
+                zip.write(inner);
+                zip.closeEntry();
+            }
+
+            assertArrayEquals(expected("masktest.txt"), NestedZipReader.read(outer, "META-INF/jarjar/dir1.zip", "masktest.txt"));
+        } finally {
+            Files.delete(outer);
+        }
+    }
+
+    @Test
+    public void cacheKeepsArchivesUntilReleased() throws IOException {
+        final byte[] expected = expected("masktest.txt");
+        final Path outer = ROOT.resolve("dir_in_dir_in_dir.zip");
+        final NestedZipReader.Cache cache = new NestedZipReader.Cache();
+
+        assertArrayEquals(expected, cache.read(outer, "dir_in_dir.zip", "dir1.zip", "masktest.txt"));
+        assertEquals(3, cache.size());
+        assertArrayEquals(expected, cache.read(outer, "dir_in_dir.zip", "dir1.zip", "masktest.txt"));
+        assertArrayEquals(new byte[0], cache.read(outer, "dir_in_dir.zip", "dir1.zip", "/subdir1/masktestsd1.txt"));
+        assertEquals(3, cache.size());
+
+        assertNull(cache.read(outer, "dir_in_dir.zip", "missing.zip", "masktest.txt"));
+        assertNull(cache.read(outer, "dir_in_dir.zip", "dir1.zip", "missing.txt"));
+        assertEquals(3, cache.size());
+
+        cache.release(outer, "dir_in_dir.zip", "dir1.zip");
+        assertEquals(2, cache.size());
+        cache.release(outer);
+        assertEquals(0, cache.size());
+
+        assertArrayEquals(expected, cache.read(outer, "dir_in_dir.zip", "dir1.zip", "masktest.txt"));
+        assertArrayEquals(Files.readAllBytes(ROOT.resolve("dir1.zip")), cache.read(ROOT.resolve("dir_in_dir.zip"), "dir1.zip"));
+        assertEquals(4, cache.size());
+        cache.clear();
+        assertEquals(0, cache.size());
+    }
+
+    private static byte[] expected(String name) throws IOException {
+        try (FileSystem fs = FileSystems.newFileSystem(URI.create("jar:" + ROOT.resolve("dir1.zip").toUri()), new HashMap<>())) {
+            return Files.readAllBytes(fs.getPath(name));
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.nio.zip;
+
+import net.minecraftforge.jarjar.nio.pathfs.PathFileSystemProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TestZipEntryIndex {
+    @Test
+    public void findsEntriesAndDirectories() throws IOException {
+        final ZipEntryIndex index = build("dir1.zip");
+
+        assertEquals(4, index.size());
+
+        final int file = index.find("masktest.txt");
+        assertTrue(file >= 0);
+        assertFalse(index.isDirectory(file));
+        assertEquals(4, index.getSize(file));
+        assertEquals("masktest.txt", index.getName(file));
+
+        final int dir = index.find("/subdir1/");
+        assertTrue(dir >= 0);
+        assertTrue(index.isDirectory(dir));
+        assertFalse(index.isSynthetic(dir));
+        assertEquals(dir, index.find(new String[] {"", "subdir1"}, 0, 2));
+
+        assertEquals(index.find("subdir1/masktestsd1.txt"), index.find(new String[] {"subdir1", "masktestsd1.txt"}, 0, 2));
+        assertEquals(-1, index.find("missing.txt"));
+        assertEquals(-1, index.find("subdir1/missing.txt"));
+
+        assertEquals(index.find("subdir1/masktestsd1.txt"), index.getFirstChild(dir));
+        assertEquals(-1, index.getNextSibling(index.getFirstChild(dir)));
+        int roots = 0;
+        for (int child = index.getFirstChild(-1); child != -1; child = index.getNextSibling(child))
+            roots++;
+        assertEquals(3, roots);
+    }
+
+    @Test
+    public void synthesizesParentDirectories() throws IOException {
+        final ZipEntryIndex index = build("dir2.zip");
+
+        final int dir = index.find("dir2");
+        assertTrue(dir >= 0);
+        assertTrue(index.isDirectory(dir));
+        assertTrue(index.isSynthetic(dir));
+        assertEquals("dir2", index.getName(dir));
+        assertEquals(-1, index.getLocalHeaderOffset(dir));
+    }
+
+    @Test
+    public void matchesZipFileSystemAttributes() throws IOException {
+        final Path target = Paths.get("src/test/resources/dir1.zip");
+        final Map<String, Object> env = new HashMap<>();
+        env.put("packagePath", target);
+        env.put(PathFileSystemProvider.OFF_HEAP_INDEX, true);
+
+        try (FileSystem jarFs = FileSystems.newFileSystem(URI.create("jar:" + target.toUri()), new HashMap<>());
+             FileSystem pathFs = FileSystems.newFileSystem(URI.create("path:///offheap"), env)) {
+            for (String name : new String[] {"masktest.txt", "masktest2.txt", "subdir1", "subdir1/masktestsd1.txt"}) {
+                final BasicFileAttributes expected = Files.readAttributes(jarFs.getPath(name), BasicFileAttributes.class);
+                final BasicFileAttributes actual = Files.readAttributes(pathFs.getPath(name), BasicFileAttributes.class);
+
+                assertEquals(expected.isDirectory(), actual.isDirectory(), name);
+                assertEquals(expected.isRegularFile(), actual.isRegularFile(), name);
+                assertEquals(expected.size(), actual.size(), name);
+                assertEquals(expected.lastModifiedTime(), actual.lastModifiedTime(), name);
+            }
+
+            assertTrue(Files.exists(pathFs.getPath("/subdir1/masktestsd1.txt")));
+            assertFalse(Files.exists(pathFs.getPath("/subdir1/missing.txt")));
+        }
+    }
+
+    private static ZipEntryIndex build(String name) throws IOException {
+        try (SeekableByteChannel channel = Files.newByteChannel(Paths.get("src/test/resources", name))) {
+            return ZipEntryIndex.build(channel);
+        }
+    }
+}
@@ -59,6 +59,7 @@ public abstract class JarJar extends org.gradle.api.tasks.bundling.Jar implement
             var metadata = p.getTasks().register(jarJar.getName() + "Metadata", JarJarMetadata.class, task -> {
                 task.setDescription("Generates the Jar-in-Jar metadata to be used by task '%s'".formatted(jarJar.getName()));
                 task.getResolvedDependencies().set(jarJarTask.resolvedDependencies);
+                task.getIncludedClasspath().setFrom(jarJarTask.getIncludedClasspath());
             });
 
             if (jarJarTask.configurationBuildDependencies != null)
@@ -70,6 +71,12 @@ public abstract class JarJar extends org.gradle.api.tasks.bundling.Jar implement
                 jarTask.from(metadata.flatMap(JarJarMetadata::getMetadataFile), copy -> copy
                     .into("META-INF/jarjar")
                 );
+                jarTask.from(metadata.flatMap(JarJarMetadata::getBinaryMetadataFile), copy -> copy
+                    .into("META-INF/jarjar")
+                );
+                jarTask.from(metadata.flatMap(JarJarMetadata::getIndexFile), copy -> copy
+                    .into("META-INF/jarjar")
+                );
 
                 jarJarTask.setManifest(jarTask.getManifest());
             }));
@@ -4,6 +4,7 @@
  */
 package net.minecraftforge.jarjar.gradle;
 
+import com.google.gson.JsonObject;
 import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
 import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
 import net.minecraftforge.jarjar.metadata.ContainedVersion;
@@ -25,17 +26,34 @@ import org.gradle.api.tasks.TaskAction;
 import org.gradle.workers.WorkAction;
 import org.gradle.workers.WorkParameters;
 import org.gradle.workers.WorkerExecutor;
+import org.jetbrains.annotations.Nullable;
 
 import javax.inject.Inject;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
 
 abstract class JarJarMetadata extends DefaultTask implements JarJarTask {
     protected abstract @Input SetProperty<ResolvedDependencyInfo> getResolvedDependencies();
 
     protected abstract @OutputFile RegularFileProperty getMetadataFile();
+    protected abstract @OutputFile RegularFileProperty getBinaryMetadataFile();
+    protected abstract @OutputFile RegularFileProperty getIndexFile();
+
+    // The index is built from the contents of the included jars, not just their coordinates
+    protected abstract @InputFiles @Classpath ConfigurableFileCollection getIncludedClasspath();
 
     protected abstract @Inject WorkerExecutor getWorkerExecutor();
     protected abstract @InputFiles @Classpath ConfigurableFileCollection getWorkerClasspath();
@@ -43,6 +61,8 @@ abstract class JarJarMetadata extends DefaultTask implements JarJarTask {
     @Inject
     public JarJarMetadata() {
         this.getMetadataFile().convention(this.getDefaultOutputDirectory().map(d -> d.file("metadata.json")));
+        this.getBinaryMetadataFile().convention(this.getDefaultOutputDirectory().map(d -> d.file("metadata.bin")));
+        this.getIndexFile().convention(this.getDefaultOutputDirectory().map(d -> d.file("index.json")));
 
         this.getWorkerClasspath().setFrom(this.getTool(Tools.JARJAR_LEGACY_METADATA));
     }
@@ -56,16 +76,33 @@ abstract class JarJarMetadata extends DefaultTask implements JarJarTask {
         work.submit(Action.class, parameters -> {
             parameters.getResolvedDependencies().set(this.getResolvedDependencies());
             parameters.getMetadataFile().set(this.getMetadataFile());
+            parameters.getBinaryMetadataFile().set(this.getBinaryMetadataFile());
+            parameters.getIndexFile().set(this.getIndexFile());
         });
 
         work.await();
     }
 
     static abstract class Action implements WorkAction<Action.Parameters> {
+        private static final String METADATA_PATH = "META-INF/jarjar/metadata.json";
+        private static final int INDEX_VERSION = 1;
+        private static final byte[] BINARY_MAGIC = { 'J', 'J', 'M', 'B' };
+        private static final int BINARY_VERSION = 1;
+        private static final int BINARY_NULL = 0x01;
+        private static final int BINARY_IDENTIFIER = 0x02;
+        private static final int BINARY_VERSIONED = 0x04;
+        private static final int BINARY_RANGE = 0x08;
+        private static final int BINARY_ARTIFACT_VERSION = 0x10;
+        private static final int BINARY_OBFUSCATED = 0x20;
+
         interface Parameters extends WorkParameters {
             SetProperty<ResolvedDependencyInfo> getResolvedDependencies();
 
             RegularFileProperty getMetadataFile();
+
+            RegularFileProperty getBinaryMetadataFile();
+
+            RegularFileProperty getIndexFile();
         }
 
         private final JarJarProblems problems = this.getObjects().newInstance(JarJarProblems.class);
@@ -90,16 +127,186 @@ abstract class JarJarMetadata extends DefaultTask implements JarJarTask {
                 ));
             }
 
+            var metadata = new Metadata(jars);
             try {
                 Files.write(
                     parameters.getMetadataFile().getAsFile().get().toPath(),
-                    MetadataIOHandler.toLines(new Metadata(jars))
+                    MetadataIOHandler.toLines(metadata)
+                );
+
+                Files.write(
+                    parameters.getBinaryMetadataFile().getAsFile().get().toPath(),
+                    binary(metadata)
+                );
+
+                Files.writeString(
+                    parameters.getIndexFile().getAsFile().get().toPath(),
+                    index(metadata, resolved),
+                    StandardCharsets.UTF_8
                 );
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         }
 
+        /**
+         * Flattens the metadata of every jar we include, and every jar nested in those, so the selector can find the whole tree in one read.
+         * This runs against whichever metadata library the worker was given, so the index is built the way
+         * {@code net.minecraftforge.jarjar.metadata.MetadataIOHandler#toLines(MetadataIndex)} builds it, with the library's own Gson.
+         */
+        private static String index(Metadata metadata, Set<ResolvedDependencyInfo> resolved) throws IOException {
+            var containers = new LinkedHashMap<String, Metadata>();
+            containers.put("", metadata);
+            for (var dependency : resolved) {
+                if (dependency.constraint)
+                    continue;
+
+                try (var zip = new ZipFile(dependency.artifact)) {
+                    collect(containers, "META-INF/jarjar/" + dependency.artifact.getName(), name -> {
+                        var entry = zip.getEntry(name);
+                        if (entry == null)
+                            return null;
+                        try (var is = zip.getInputStream(entry)) {
+                            return is.readAllBytes();
+                        }
+                    });
+                }
+            }
+
+            var json = new JsonObject();
+            for (var entry : containers.entrySet())
+                json.add(entry.getKey(), MetadataIOHandler.getGson().toJsonTree(entry.getValue(), Metadata.class));
+
+            var ret = new JsonObject();
+            ret.addProperty("version", INDEX_VERSION);
+            ret.add("containers", json);
+            return MetadataIOHandler.getGson().toJson(ret);
+        }
+
+        /**
+         * Encodes the metadata in the binary format of {@code net.minecraftforge.jarjar.metadata.MetadataIOHandler#toBinary}, which older versions of the library don't have.
+         * Every string is taken from the JSON the library writes, so both copies always describe the same jars.
+         * The layout is the library's {@code MetadataBinary}, whose tests decode a copy of this method's output, so change both together.
+         */
+        private static byte[] binary(Metadata metadata) throws IOException {
+            var bytes = new ByteArrayOutputStream();
+            try (var out = new DataOutputStream(bytes)) {
+                out.write(BINARY_MAGIC);
+                out.writeByte(BINARY_VERSION);
+
+                var jars = MetadataIOHandler.getGson().toJsonTree(metadata).getAsJsonObject().get("jars");
+                if (jars == null || jars.isJsonNull()) {
+                    out.writeInt(-1);
+                    return bytes.toByteArray();
+                }
+
+                out.writeInt(jars.getAsJsonArray().size());
+                for (var element : jars.getAsJsonArray()) {
+                    if (element.isJsonNull()) {
+                        out.writeByte(BINARY_NULL);
+                        continue;
+                    }
+
+                    var jar = element.getAsJsonObject();
+                    var identifier = object(jar, "identifier");
+                    var version = object(jar, "version");
+                    var range = version == null ? null : string(version, "range");
+                    var artifactVersion = version == null ? null : string(version, "artifactVersion");
+                    var obfuscated = jar.has("isObfuscated") && jar.get("isObfuscated").getAsBoolean();
+
+                    out.writeByte(
+                        (identifier != null ? BINARY_IDENTIFIER : 0) |
+                        (version != null ? BINARY_VERSIONED : 0) |
+                        (range != null ? BINARY_RANGE : 0) |
+                        (artifactVersion != null ? BINARY_ARTIFACT_VERSION : 0) |
+                        (obfuscated ? BINARY_OBFUSCATED : 0)
+                    );
+                    if (identifier != null) {
+                        out.writeUTF(identifier.get("group").getAsString());
+                        out.writeUTF(identifier.get("artifact").getAsString());
+                    }
+                    if (range != null)
+                        out.writeUTF(range);
+                    if (artifactVersion != null)
+                        out.writeUTF(artifactVersion);
+                    out.writeUTF(jar.get("path").getAsString());
+                }
+            }
+            return bytes.toByteArray();
+        }
+
+        private static @Nullable JsonObject object(JsonObject json, String name) {
+            var ret = json.get(name);
+            return ret == null || ret.isJsonNull() ? null : ret.getAsJsonObject();
+        }
+
+        private static @Nullable String string(JsonObject json, String name) {
+            var ret = json.get(name);
+            return ret == null || ret.isJsonNull() ? null : ret.getAsString();
+        }
+
+        private static void collect(Map<String, Metadata> containers, String path, EntryReader reader) throws IOException {
+            var data = reader.read(METADATA_PATH);
+            if (data == null)
+                return;
+
+            var metadata = MetadataIOHandler.fromStream(new ByteArrayInputStream(data)).orElse(null);
+            if (metadata == null || metadata.jars() == null || metadata.jars().isEmpty())
+                return;
+
+            containers.put(path, metadata);
+            for (var jar : metadata.jars()) {
+                if (jar.path() == null || jar.path().isEmpty())
+                    continue;
+
+                var nested = reader.read(jar.path());
+                if (nested == null)
+                    continue;
+
+                collect(containers, path + "!/" + jar.path(), entries(nested));
+            }
+        }
+
+        /**
+         * Streams a nested jar keeping only its metadata and the jars that metadata lists, everything else is skipped without being read into memory.
+         * The metadata can come after the jars in the stream, so the jar is walked twice rather than holding on to every candidate until it's found.
+         */
+        private static EntryReader entries(byte[] jar) throws IOException {
+            var entries = new HashMap<String, byte[]>();
+            try (var zip = new ZipInputStream(new ByteArrayInputStream(jar))) {
+                for (var entry = zip.getNextEntry(); entry != null; entry = zip.getNextEntry()) {
+                    if (!entry.isDirectory() && METADATA_PATH.equals(entry.getName())) {
+                        entries.put(METADATA_PATH, zip.readAllBytes());
+                        break;
+                    }
+                }
+            }
+
+            var data = entries.get(METADATA_PATH);
+            var metadata = data == null ? null : MetadataIOHandler.fromStream(new ByteArrayInputStream(data)).orElse(null);
+            if (metadata == null || metadata.jars() == null || metadata.jars().isEmpty())
+                return entries::get;
+
+            var wanted = new HashSet<String>();
+            for (var nested : metadata.jars()) {
+                if (nested.path() != null && !nested.path().isEmpty())
+                    wanted.add(nested.path());
+            }
+
+            try (var zip = new ZipInputStream(new ByteArrayInputStream(jar))) {
+                for (var entry = zip.getNextEntry(); entry != null && !wanted.isEmpty(); entry = zip.getNextEntry()) {
+                    if (!entry.isDirectory() && wanted.remove(entry.getName()))
+                        entries.put(entry.getName(), zip.readAllBytes());
+                }
+            }
+            return entries::get;
+        }
+
+        @FunctionalInterface
+        private interface EntryReader {
+            byte @Nullable [] read(String name) throws IOException;
+        }
+
         private String validateGroup(ResolvedDependencyInfo dependency) {
             try {
                 return Objects.requireNonNull(dependency.module.getGroup());
@@ -9,6 +9,8 @@ import java.util.Objects;
 public final class ContainedJarIdentifier {
     private final String group;
     private final String artifact;
+    // Cached like String.hashCode, 0 until first computed
+    private int hash;
 
     public ContainedJarIdentifier(String group, String artifact) {
         this.group = group;
@@ -28,13 +30,17 @@ public final class ContainedJarIdentifier {
         if (obj == this) return true;
         if (obj == null || obj.getClass() != this.getClass()) return false;
         final ContainedJarIdentifier that = (ContainedJarIdentifier) obj;
+        if (this.hash != 0 && that.hash != 0 && this.hash != that.hash) return false;
         return Objects.equals(this.group, that.group) &&
             Objects.equals(this.artifact, that.artifact);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(group, artifact);
+        int ret = hash;
+        if (ret == 0)
+            hash = ret = Objects.hash(group, artifact);
+        return ret;
     }
 
     @Override
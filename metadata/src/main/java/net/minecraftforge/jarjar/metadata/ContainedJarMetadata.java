@@ -11,6 +11,7 @@ public final class ContainedJarMetadata {
     private final ContainedVersion version;
     private final String path;
     private final boolean isObfuscated;
+    private int hash;
 
     public ContainedJarMetadata(ContainedJarIdentifier identifier, ContainedVersion version, String path, boolean isObfuscated) {
         this.identifier = identifier;
@@ -40,6 +41,7 @@ public final class ContainedJarMetadata {
         if (obj == this) return true;
         if (obj == null || obj.getClass() != this.getClass()) return false;
         final ContainedJarMetadata that = (ContainedJarMetadata) obj;
+        if (this.hash != 0 && that.hash != 0 && this.hash != that.hash) return false;
         return Objects.equals(this.identifier, that.identifier) &&
             Objects.equals(this.version, that.version) &&
             Objects.equals(this.path, that.path) &&
@@ -48,7 +50,10 @@ public final class ContainedJarMetadata {
 
     @Override
     public int hashCode() {
-        return Objects.hash(identifier, version, path, isObfuscated);
+        int ret = hash;
+        if (ret == 0)
+            hash = ret = Objects.hash(identifier, version, path, isObfuscated);
+        return ret;
     }
 
     @Override
@@ -12,6 +12,9 @@ import java.util.Objects;
 public final class ContainedVersion {
     private final VersionRange range;
     private final ArtifactVersion artifactVersion;
+    // Cached, hashing a VersionRange walks its restrictions
+    private int hash;
+    private VersionKey key;
 
     public ContainedVersion(VersionRange range, ArtifactVersion artifactVersion) {
         this.range = range;
@@ -26,18 +29,32 @@ public final class ContainedVersion {
         return artifactVersion;
     }
 
+    /**
+     * The comparison key of the artifact version, built on first use. Null if there is no artifact version.
+     */
+    public VersionKey artifactVersionKey() {
+        VersionKey ret = key;
+        if (ret == null && artifactVersion != null)
+            key = ret = VersionKey.of(artifactVersion);
+        return ret;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (obj == this) return true;
         if (obj == null || obj.getClass() != this.getClass()) return false;
         final ContainedVersion that = (ContainedVersion) obj;
+        if (this.hash != 0 && that.hash != 0 && this.hash != that.hash) return false;
         return Objects.equals(this.range, that.range) &&
             Objects.equals(this.artifactVersion, that.artifactVersion);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(range, artifactVersion);
+        int ret = hash;
+        if (ret == 0)
+            hash = ret = Objects.hash(range, artifactVersion);
+        return ret;
     }
 
     @Override
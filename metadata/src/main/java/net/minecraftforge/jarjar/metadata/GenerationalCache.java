@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Two generations of entries. New entries go into the current one, once it is full it replaces the old one,
+ * and old entries that are used again are moved into the current one. This keeps at most twice the max size without tracking every access.
+ */
+final class GenerationalCache<K, V> {
+    private final int maxSize;
+    private volatile Map<K, V> current = new ConcurrentHashMap<>();
+    private volatile Map<K, V> previous = new ConcurrentHashMap<>();
+
+    GenerationalCache(int maxSize) {
+        if (maxSize < 1)
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        this.maxSize = maxSize;
+    }
+
+    V get(K key) {
+        V ret = current.get(key);
+        if (ret != null)
+            return ret;
+
+        ret = previous.get(key);
+        return ret == null ? null : put(key, ret);
+    }
+
+    /** Returns the value already cached for the key if another thread got there first, so everyone shares one instance */
+    V put(K key, V value) {
+        Map<K, V> map = current;
+        if (map.size() >= maxSize) {
+            synchronized (this) {
+                if (current.size() >= maxSize) {
+                    previous = current;
+                    current = new ConcurrentHashMap<>();
+                }
+                map = current;
+            }
+        }
+        V existing = map.putIfAbsent(key, value);
+        return existing == null ? value : existing;
+    }
+
+    synchronized void clear() {
+        current = new ConcurrentHashMap<>();
+        previous = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import net.minecraftforge.jarjar.metadata.json.VersionRangeSerializer;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Binary encoding of {@link Metadata}, an alternative to JSON that needs no tokenizing.
+ * <pre>
+ * magic    "JJMB"
+ * version  byte
+ * count    int, -1 if there is no list of jars
+ * jars     flags byte, then the present parts as modified UTF-8: group, artifact, range, artifact version, path
+ * </pre>
+ * Ranges and versions are stored as the same spec strings JSON stores, and parsed through {@link VersionCache}.
+ * A range could be rebuilt from its restrictions instead, but the bounds would still be versions to parse.
+ * <p>
+ * The jarjar-gradle plugin writes this layout itself in {@code JarJarMetadata}, as it runs against versions of this
+ * library that don't have it. Any change here has to be made there too, under a new {@link #VERSION}.
+ */
+final class MetadataBinary {
+    private MetadataBinary() { }
+
+    static final byte[] MAGIC = { 'J', 'J', 'M', 'B' };
+    static final int VERSION = 1;
+
+    private static final int NULL = 0x01;
+    private static final int IDENTIFIER = 0x02;
+    private static final int VERSIONED = 0x04;
+    private static final int RANGE = 0x08;
+    private static final int ARTIFACT_VERSION = 0x10;
+    private static final int OBFUSCATED = 0x20;
+
+    static boolean isBinary(final byte[] header, final int length) {
+        if (length < MAGIC.length)
+            return false;
+        for (int x = 0; x < MAGIC.length; x++) {
+            if (header[x] != MAGIC[x])
+                return false;
+        }
+        return true;
+    }
+
+    static byte[] write(final Metadata metadata) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.write(MAGIC);
+            out.writeByte(VERSION);
+
+            final List<ContainedJarMetadata> jars = metadata.jars();
+            out.writeInt(jars == null ? -1 : jars.size());
+            if (jars != null) {
+                for (ContainedJarMetadata jar : jars)
+                    write(out, jar);
+            }
+        } catch (IOException e) {
+            // Only thrown for strings too long to encode
+            throw new IllegalArgumentException("Failed to encode metadata", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void write(final DataOutputStream out, final ContainedJarMetadata jar) throws IOException {
+        if (jar == null) {
+            out.writeByte(NULL);
+            return;
+        }
+
+        final ContainedVersion version = jar.version();
+        int flags = 0;
+        if (jar.identifier() != null) flags |= IDENTIFIER;
+        if (version != null) flags |= VERSIONED;
+        if (version != null && version.range() != null) flags |= RANGE;
+        if (version != null && version.artifactVersion() != null) flags |= ARTIFACT_VERSION;
+        if (jar.isObfuscated()) flags |= OBFUSCATED;
+        out.writeByte(flags);
+
+        if (jar.identifier() != null) {
+            out.writeUTF(jar.identifier().group());
+            out.writeUTF(jar.identifier().artifact());
+        }
+        if ((flags & RANGE) != 0)
+            out.writeUTF(VersionRangeSerializer.serializeRange(version.range()));
+        if ((flags & ARTIFACT_VERSION) != 0)
+            out.writeUTF(version.artifactVersion().toString());
+        out.writeUTF(jar.path());
+    }
+
+    /**
+     * Reads a whole document, the stream must start with the magic
+     */
+    static Metadata read(final InputStream stream) throws IOException {
+        final DataInputStream in = new DataInputStream(stream);
+        final byte[] magic = new byte[MAGIC.length];
+        in.readFully(magic);
+        if (!isBinary(magic, magic.length))
+            throw new IOException("Not binary metadata");
+
+        final int version = in.readUnsignedByte();
+        if (version != VERSION)
+            throw new IOException("Unsupported binary metadata version: " + version);
+
+        final int count = in.readInt();
+        if (count < -1)
+            throw new IOException("Invalid jar count: " + count);
+
+        List<ContainedJarMetadata> jars = null;
+        if (count >= 0) {
+            // Every jar takes at least a byte, don't trust the count for the initial capacity
+            jars = new ArrayList<>(Math.min(count, 1024));
+            for (int x = 0; x < count; x++)
+                jars.add(readJar(in));
+        }
+
+        if (in.read() != -1)
+            throw new IOException("Binary metadata was not fully consumed.");
+        return new Metadata(jars);
+    }
+
+    private static ContainedJarMetadata readJar(final DataInputStream in) throws IOException {
+        final int flags = in.readUnsignedByte();
+        if (flags == NULL)
+            return null;
+        if ((flags & ~(IDENTIFIER | VERSIONED | RANGE | ARTIFACT_VERSION | OBFUSCATED)) != 0)
+            throw new IOException("Invalid jar flags: " + flags);
+
+        ContainedJarIdentifier identifier = null;
+        if ((flags & IDENTIFIER) != 0)
+            identifier = new ContainedJarIdentifier(in.readUTF(), in.readUTF());
+
+        VersionRange range = null;
+        if ((flags & RANGE) != 0) {
+            final String spec = in.readUTF();
+            try {
+                range = VersionCache.shared().range(spec);
+            } catch (InvalidVersionSpecificationException e) {
+                throw new IOException("Failed to parse version spec from: " + spec, e);
+            }
+        }
+
+        ArtifactVersion artifactVersion = null;
+        if ((flags & ARTIFACT_VERSION) != 0)
+            artifactVersion = VersionCache.shared().version(in.readUTF());
+
+        final ContainedVersion version = (flags & VERSIONED) != 0 ? new ContainedVersion(range, artifactVersion) : null;
+        return MetadataInterner.shared().jar(identifier, version, in.readUTF(), (flags & OBFUSCATED) != 0);
+    }
+}
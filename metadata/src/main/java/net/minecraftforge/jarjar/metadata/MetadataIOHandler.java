@@ -6,10 +6,13 @@ package net.minecraftforge.jarjar.metadata;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonReader;
 import net.minecraftforge.jarjar.metadata.json.ArtifactVersionSerializer;
 import net.minecraftforge.jarjar.metadata.json.ContainedJarIdentifierSerializer;
 import net.minecraftforge.jarjar.metadata.json.ContainedJarMetadataSerializer;
 import net.minecraftforge.jarjar.metadata.json.ContainedVersionSerializer;
+import net.minecraftforge.jarjar.metadata.json.MetadataJsonReader;
 import net.minecraftforge.jarjar.metadata.json.MetadataSerializer;
 import net.minecraftforge.jarjar.metadata.json.VersionRangeSerializer;
 import org.apache.maven.artifact.versioning.ArtifactVersion;
@@ -18,10 +21,16 @@ import org.apache.maven.artifact.versioning.VersionRange;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 
 public final class MetadataIOHandler {
@@ -43,21 +52,143 @@ public final class MetadataIOHandler {
         return GSON;
     }
 
+    /**
+     * Reads UTF-8 encoded or {@linkplain #toBinary(Metadata) binary} metadata, returns empty if it is empty or invalid
+     */
     public static Optional<Metadata> fromStream(final InputStream stream) {
+        final InputStream in = stream.markSupported() ? stream : new BufferedInputStream(stream);
+        final byte[] header = new byte[MetadataBinary.MAGIC.length];
+        final int length;
         try {
-            return Optional.of(GSON.fromJson(new InputStreamReader(stream), Metadata.class));
+            in.mark(header.length);
+            length = readHeader(in, header);
+            in.reset();
+        } catch (IOException e) {
+            LOGGER.error("Failed to read metadata", e);
+            return Optional.empty();
+        }
+
+        return MetadataBinary.isBinary(header, length) ? readBinary(in) : read(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Reads UTF-8 encoded or {@linkplain #toBinary(Metadata) binary} metadata from the remaining bytes of the buffer, without changing its position.
+     * Returns empty if it is empty or invalid.
+     */
+    public static Optional<Metadata> fromBuffer(final ByteBuffer buffer) {
+        final ByteBuffer data = buffer.duplicate();
+        final byte[] header = new byte[Math.min(MetadataBinary.MAGIC.length, data.remaining())];
+        data.duplicate().get(header);
+
+        final InputStream in = new ByteBufferInputStream(data);
+        return MetadataBinary.isBinary(header, header.length) ? readBinary(in) : read(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    private static int readHeader(final InputStream stream, final byte[] header) throws IOException {
+        int length = 0;
+        while (length < header.length) {
+            final int read = stream.read(header, length, header.length - length);
+            if (read == -1)
+                break;
+            length += read;
+        }
+        return length;
+    }
+
+    private static Optional<Metadata> readBinary(final InputStream stream) {
+        try {
+            return Optional.of(MetadataBinary.read(stream));
+        } catch (Exception e) {
+            LOGGER.error("Failed to parse binary metadata", e);
+            return Optional.empty();
+        }
+    }
+
+    private static Optional<Metadata> read(final Reader reader) {
+        // Streams straight into the values, this accepts the same documents as reading through GSON
+        try (JsonReader json = new JsonReader(reader)) {
+            return Optional.ofNullable(MetadataJsonReader.read(json));
         } catch (Exception e) {
             LOGGER.error("Failed to parse metadata", e);
             return Optional.empty();
         }
     }
 
+    /**
+     * Reads a UTF-8 encoded {@link MetadataIndex}, returns empty if it is empty or invalid
+     */
+    public static Optional<MetadataIndex> indexFromStream(final InputStream stream) {
+        try (JsonReader json = new JsonReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            return Optional.ofNullable(MetadataJsonReader.readIndex(json));
+        } catch (Exception e) {
+            LOGGER.error("Failed to parse metadata index", e);
+            return Optional.empty();
+        }
+    }
+
+    public static Iterable<String> toLines(final MetadataIndex index) {
+        return Arrays.asList(GSON.toJson(toJson(index)).split("\n"));
+    }
+
+    public static InputStream toInputStream(final MetadataIndex index) {
+        return new ByteArrayInputStream(GSON.toJson(toJson(index)).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static JsonObject toJson(final MetadataIndex index) {
+        final JsonObject containers = new JsonObject();
+        for (Map.Entry<String, Metadata> entry : index.containers().entrySet())
+            containers.add(entry.getKey(), GSON.toJsonTree(entry.getValue(), Metadata.class));
+
+        final JsonObject ret = new JsonObject();
+        ret.addProperty("version", MetadataIndex.VERSION);
+        ret.add("containers", containers);
+        return ret;
+    }
+
     public static Iterable<String> toLines(final Metadata metadata) {
         return Arrays.asList(GSON.toJson(metadata).split("\n"));
     }
 
     public static InputStream toInputStream(final Metadata metadata) {
         final String values = GSON.toJson(metadata);
-        return new ByteArrayInputStream(values.getBytes());
+        return new ByteArrayInputStream(values.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Encodes the metadata in the binary format, which is read faster than JSON but only by readers that know it.
+     * Ship it next to the JSON, as {@code metadata.bin}, so older readers still find the JSON.
+     */
+    public static byte[] toBinary(final Metadata metadata) {
+        return MetadataBinary.write(metadata);
+    }
+
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        private ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+
+            final int read = Math.min(len, buffer.remaining());
+            buffer.get(b, off, read);
+            return read;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
     }
 }
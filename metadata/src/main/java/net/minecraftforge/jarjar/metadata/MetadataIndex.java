@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The metadata of a jar and of every jar nested in it, however deep, so the whole tree can be discovered from one file.
+ * <p>
+ * Containers are keyed by the entries leading to them from the indexed jar, joined with {@value #SEPARATOR}. The indexed jar itself is the empty path,
+ * a jar it contains is {@code META-INF/jarjar/a.jar}, and a jar inside that is {@code META-INF/jarjar/a.jar!/META-INF/jarjar/b.jar}.
+ * Jars without nested jars of their own are not listed as containers.
+ */
+public final class MetadataIndex {
+    public static final String SEPARATOR = "!/";
+    public static final int VERSION = 1;
+
+    private final Map<String, Metadata> containers;
+
+    public MetadataIndex(Map<String, Metadata> containers) {
+        this.containers = Collections.unmodifiableMap(new LinkedHashMap<>(containers));
+    }
+
+    /**
+     * Every container, parents before the jars they contain if the index was written that way
+     */
+    public Map<String, Metadata> containers() {
+        return containers;
+    }
+
+    /**
+     * The metadata of the jar at the path, or null if it has no nested jars
+     */
+    public Metadata get(String path) {
+        return containers.get(path);
+    }
+
+    public static String child(String container, String path) {
+        return container.isEmpty() ? path : container + SEPARATOR + path;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this) return true;
+        if (obj == null || obj.getClass() != this.getClass()) return false;
+        final MetadataIndex that = (MetadataIndex) obj;
+        return Objects.equals(this.containers, that.containers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(containers);
+    }
+
+    @Override
+    public String toString() {
+        return "MetadataIndex[" +
+            "containers=" + containers + ']';
+    }
+}
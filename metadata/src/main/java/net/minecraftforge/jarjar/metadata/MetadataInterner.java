@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+/**
+ * Bounded, thread safe canonicalizing factory for the metadata value classes.
+ * <p>
+ * Most jars in a tree share identifiers and versions, and the same library is often nested in several jars.
+ * Readers build their values through {@link #shared()}, so equal values read from different jars are usually the same instance,
+ * and comparing them is a reference check.
+ */
+public final class MetadataInterner {
+    private static final int DEFAULT_SIZE = 4096;
+    private static final MetadataInterner SHARED = new MetadataInterner(DEFAULT_SIZE);
+
+    private final GenerationalCache<ContainedJarIdentifier, ContainedJarIdentifier> identifiers;
+    private final GenerationalCache<ContainedVersion, ContainedVersion> versions;
+    private final GenerationalCache<ContainedJarMetadata, ContainedJarMetadata> jars;
+
+    /**
+     * @param maxSize How many of each kind of value to keep
+     */
+    public MetadataInterner(int maxSize) {
+        this.identifiers = new GenerationalCache<>(maxSize);
+        this.versions = new GenerationalCache<>(maxSize);
+        this.jars = new GenerationalCache<>(maxSize);
+    }
+
+    /** The interner used when reading metadata */
+    public static MetadataInterner shared() {
+        return SHARED;
+    }
+
+    public ContainedJarIdentifier identifier(String group, String artifact) {
+        return intern(new ContainedJarIdentifier(group, artifact));
+    }
+
+    public ContainedVersion version(VersionRange range, ArtifactVersion artifactVersion) {
+        return intern(new ContainedVersion(range, artifactVersion));
+    }
+
+    public ContainedJarMetadata jar(ContainedJarIdentifier identifier, ContainedVersion version, String path, boolean isObfuscated) {
+        return intern(new ContainedJarMetadata(identifier, version, path, isObfuscated));
+    }
+
+    public ContainedJarIdentifier intern(ContainedJarIdentifier identifier) {
+        return intern(identifiers, identifier);
+    }
+
+    public ContainedVersion intern(ContainedVersion version) {
+        return intern(versions, version);
+    }
+
+    /**
+     * Also interns the identifier and version of the jar
+     */
+    public ContainedJarMetadata intern(ContainedJarMetadata jar) {
+        ContainedJarMetadata ret = jars.get(jar);
+        if (ret != null)
+            return ret;
+
+        ContainedJarIdentifier identifier = jar.identifier() == null ? null : intern(jar.identifier());
+        ContainedVersion version = jar.version() == null ? null : intern(jar.version());
+        if (identifier != jar.identifier() || version != jar.version())
+            jar = new ContainedJarMetadata(identifier, version, jar.path(), jar.isObfuscated());
+        return jars.put(jar, jar);
+    }
+
+    public void clear() {
+        identifiers.clear();
+        versions.clear();
+        jars.clear();
+    }
+
+    private static <V> V intern(GenerationalCache<V, V> cache, V value) {
+        V ret = cache.get(value);
+        return ret != null ? ret : cache.put(value, value);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded, thread safe cache of parsed version ranges and artifact versions, by the string they were parsed from.
+ * <p>
+ * The same few ranges and versions show up in the metadata of most jars, so every reader in this module and the selector
+ * parse through {@link #shared()}. The returned instances are shared, they must not be modified, for example with {@link ArtifactVersion#parseVersion(String)}.
+ */
+public final class VersionCache {
+    private static final int DEFAULT_SIZE = 4096;
+    private static final VersionCache SHARED = new VersionCache(DEFAULT_SIZE);
+
+    private final GenerationalCache<String, VersionRange> ranges;
+    private final GenerationalCache<String, ArtifactVersion> versions;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * @param maxSize How many ranges, and how many versions, to keep. Entries that are not used for this many new strings are dropped.
+     */
+    public VersionCache(int maxSize) {
+        this.ranges = new GenerationalCache<>(maxSize);
+        this.versions = new GenerationalCache<>(maxSize);
+    }
+
+    /** The cache used when reading metadata */
+    public static VersionCache shared() {
+        return SHARED;
+    }
+
+    /**
+     * Same as {@link VersionRange#createFromVersionSpec(String)}, invalid specs are not cached
+     */
+    public VersionRange range(String spec) throws InvalidVersionSpecificationException {
+        VersionRange ret = ranges.get(spec);
+        if (ret != null) {
+            hits.increment();
+            return ret;
+        }
+
+        misses.increment();
+        return ranges.put(spec, VersionRange.createFromVersionSpec(spec));
+    }
+
+    /**
+     * Same as {@link DefaultArtifactVersion#DefaultArtifactVersion(String)}
+     */
+    public ArtifactVersion version(String version) {
+        ArtifactVersion ret = versions.get(version);
+        if (ret != null) {
+            hits.increment();
+            return ret;
+        }
+
+        misses.increment();
+        return versions.put(version, new DefaultArtifactVersion(version));
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /** Hits divided by lookups, 0 if nothing was looked up yet */
+    public double getHitRate() {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /** Drops every entry and resets the counters */
+    public void clear() {
+        ranges.clear();
+        versions.clear();
+        hits.reset();
+        misses.reset();
+    }
+
+    @Override
+    public String toString() {
+        return "VersionCache[hits=" + getHits() + ", misses=" + getMisses() + ']';
+    }
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+
+/**
+ * An {@link ArtifactVersion} with a precomputed comparison key, ordered exactly like {@link ArtifactVersion#compareTo(Object)}.
+ * <p>
+ * Plain numeric versions of up to four components below 65536, which is nearly every library version, are packed into a single long
+ * with 16 bits per component. Missing components are zero, which matches Maven treating {@code 1}, {@code 1.0} and {@code 1.0.0} as equal.
+ * Two packed keys compare as longs, anything else falls back to Maven's comparison.
+ * <p>
+ * The ordering is not consistent with equals, keys are compared, never hashed.
+ */
+public final class VersionKey implements Comparable<VersionKey> {
+    private static final int COMPONENTS = 4;
+    private static final int BITS = 16;
+
+    private final ArtifactVersion version;
+    private final long key;
+    private final boolean packed;
+
+    private VersionKey(ArtifactVersion version, long key, boolean packed) {
+        this.version = version;
+        this.key = key;
+        this.packed = packed;
+    }
+
+    public static VersionKey of(ArtifactVersion version) {
+        final String value = version.toString();
+        long key = 0;
+        int components = 0;
+        int component = -1;
+        for (int x = 0; x <= value.length(); x++) {
+            final char c = x == value.length() ? '.' : value.charAt(x);
+            if (c >= '0' && c <= '9') {
+                component = (component == -1 ? 0 : component * 10) + (c - '0');
+                if (component >= 1 << BITS)
+                    return new VersionKey(version, 0, false);
+            } else if (c == '.' && component != -1 && components < COMPONENTS) {
+                key = (key << BITS) | component;
+                components++;
+                component = -1;
+            } else {
+                return new VersionKey(version, 0, false);
+            }
+        }
+
+        key <<= BITS * (COMPONENTS - components);
+        return new VersionKey(version, key, true);
+    }
+
+    public ArtifactVersion version() {
+        return version;
+    }
+
+    /** If this version was packed, and compares to other packed versions without calling Maven */
+    public boolean isPacked() {
+        return packed;
+    }
+
+    @Override
+    public int compareTo(VersionKey other) {
+        if (this.packed && other.packed)
+            return Long.compareUnsigned(this.key, other.key);
+        return this.version.compareTo(other.version);
+    }
+
+    @Override
+    public String toString() {
+        return version.toString();
+    }
+}
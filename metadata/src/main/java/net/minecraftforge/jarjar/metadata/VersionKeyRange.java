@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.Restriction;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+import java.util.List;
+
+/**
+ * The restrictions of a {@link VersionRange} as intervals of {@link VersionKey}s, so checking many versions against the same range
+ * doesn't parse or walk Maven's versions for every check. {@link #contains(VersionKey)} matches {@link VersionRange#containsVersion(ArtifactVersion)}.
+ */
+public final class VersionKeyRange {
+    private final VersionRange range;
+    // Null bounds are unbounded
+    private final VersionKey[] lower;
+    private final boolean[] lowerInclusive;
+    private final VersionKey[] upper;
+    private final boolean[] upperInclusive;
+
+    private VersionKeyRange(VersionRange range) {
+        this.range = range;
+        final List<Restriction> restrictions = range.getRestrictions();
+        final int size = restrictions.size();
+        this.lower = new VersionKey[size];
+        this.lowerInclusive = new boolean[size];
+        this.upper = new VersionKey[size];
+        this.upperInclusive = new boolean[size];
+
+        for (int x = 0; x < size; x++) {
+            final Restriction restriction = restrictions.get(x);
+            lower[x] = restriction.getLowerBound() == null ? null : VersionKey.of(restriction.getLowerBound());
+            lowerInclusive[x] = restriction.isLowerBoundInclusive();
+            upper[x] = restriction.getUpperBound() == null ? null : VersionKey.of(restriction.getUpperBound());
+            upperInclusive[x] = restriction.isUpperBoundInclusive();
+        }
+    }
+
+    public static VersionKeyRange of(VersionRange range) {
+        return new VersionKeyRange(range);
+    }
+
+    public VersionRange range() {
+        return range;
+    }
+
+    public boolean contains(VersionKey version) {
+        for (int x = 0; x < lower.length; x++) {
+            if (contains(x, version))
+                return true;
+        }
+        return false;
+    }
+
+    /** Same checks as {@link Restriction#containsVersion(ArtifactVersion)} */
+    private boolean contains(int restriction, VersionKey version) {
+        if (lower[restriction] != null) {
+            final int compare = lower[restriction].compareTo(version);
+            if (compare > 0 || (compare == 0 && !lowerInclusive[restriction]))
+                return false;
+        }
+
+        if (upper[restriction] != null) {
+            final int compare = upper[restriction].compareTo(version);
+            if (compare < 0 || (compare == 0 && !upperInclusive[restriction]))
+                return false;
+        }
+
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return range.toString();
+    }
+}
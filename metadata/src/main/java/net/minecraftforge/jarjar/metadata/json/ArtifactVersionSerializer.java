@@ -11,8 +11,8 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import net.minecraftforge.jarjar.metadata.VersionCache;
 import org.apache.maven.artifact.versioning.ArtifactVersion;
-import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 
 import java.lang.reflect.Type;
 
@@ -22,7 +22,7 @@ public class ArtifactVersionSerializer implements JsonSerializer<ArtifactVersion
         if (!json.isJsonPrimitive())
             throw new JsonParseException("Expected a string, but got: " + json);
 
-        return new DefaultArtifactVersion(json.getAsString());
+        return VersionCache.shared().version(json.getAsString());
     }
 
     @Override
@@ -15,6 +15,7 @@ import com.google.gson.JsonSerializer;
 import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
 import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
 import net.minecraftforge.jarjar.metadata.ContainedVersion;
+import net.minecraftforge.jarjar.metadata.MetadataInterner;
 
 import java.lang.reflect.Type;
 
@@ -32,7 +33,7 @@ public class ContainedJarMetadataSerializer implements JsonSerializer<ContainedJ
         if (jsonObject.has("isObfuscated"))
             isObfuscated = jsonObject.get("isObfuscated").getAsBoolean();
 
-        return new ContainedJarMetadata(containedJarIdentifier, version, path, isObfuscated);
+        return MetadataInterner.shared().jar(containedJarIdentifier, version, path, isObfuscated);
     }
 
     @Override
@@ -0,0 +1,279 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata.json;
+
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
+import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
+import net.minecraftforge.jarjar.metadata.ContainedVersion;
+import net.minecraftforge.jarjar.metadata.Metadata;
+import net.minecraftforge.jarjar.metadata.MetadataIndex;
+import net.minecraftforge.jarjar.metadata.MetadataInterner;
+import net.minecraftforge.jarjar.metadata.VersionCache;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads {@link Metadata} and {@link MetadataIndex} documents straight from a {@link JsonReader}, without building a tree first.
+ * Accepts exactly what the serializers in this package accept and builds the same values, including nulls for missing optional parts.
+ */
+public final class MetadataJsonReader {
+    private MetadataJsonReader() { }
+
+    /**
+     * Reads a whole document, returns null if it is empty
+     */
+    public static Metadata read(final JsonReader reader) throws IOException {
+        reader.setLenient(true);
+        final JsonToken first;
+        try {
+            first = reader.peek();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        final Metadata ret = first == JsonToken.NULL ? skipNull(reader) : readMetadata(reader);
+        if (ret != null && reader.peek() != JsonToken.END_DOCUMENT)
+            throw new JsonParseException("JSON document was not fully consumed.");
+        return ret;
+    }
+
+    /**
+     * Reads a whole {@link MetadataIndex} document, returns null if it is empty
+     */
+    public static MetadataIndex readIndex(final JsonReader reader) throws IOException {
+        reader.setLenient(true);
+        try {
+            reader.peek();
+        } catch (EOFException e) {
+            return null;
+        }
+
+        expectObject(reader);
+        Integer version = null;
+        Map<String, Metadata> containers = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "version":
+                    version = reader.nextInt();
+                    break;
+                case "containers":
+                    containers = readContainers(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (version == null || version != MetadataIndex.VERSION)
+            throw new JsonParseException("Unsupported index version: " + version);
+        if (containers == null)
+            throw new JsonParseException("Missing containers");
+        if (reader.peek() != JsonToken.END_DOCUMENT)
+            throw new JsonParseException("JSON document was not fully consumed.");
+        return new MetadataIndex(containers);
+    }
+
+    private static Map<String, Metadata> readContainers(final JsonReader reader) throws IOException {
+        expectObject(reader);
+        final Map<String, Metadata> ret = new LinkedHashMap<>();
+        reader.beginObject();
+        while (reader.hasNext())
+            ret.put(reader.nextName(), readMetadata(reader));
+        reader.endObject();
+        return ret;
+    }
+
+    private static Metadata readMetadata(final JsonReader reader) throws IOException {
+        expectObject(reader);
+        List<ContainedJarMetadata> jars = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if ("jars".equals(reader.nextName()))
+                jars = readJars(reader);
+            else
+                reader.skipValue();
+        }
+        reader.endObject();
+        return new Metadata(jars);
+    }
+
+    private static List<ContainedJarMetadata> readJars(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL)
+            return skipNull(reader);
+        if (reader.peek() != JsonToken.BEGIN_ARRAY)
+            throw new JsonParseException("Expected array, but got: " + reader.peek());
+
+        final List<ContainedJarMetadata> ret = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext())
+            ret.add(reader.peek() == JsonToken.NULL ? skipNull(reader) : readJar(reader));
+        reader.endArray();
+        return ret;
+    }
+
+    private static ContainedJarMetadata readJar(final JsonReader reader) throws IOException {
+        expectObject(reader);
+        ContainedJarIdentifier identifier = null;
+        ContainedVersion version = null;
+        String path = null;
+        Boolean obfuscated = null;
+        boolean hasObfuscated = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "identifier":
+                    identifier = reader.peek() == JsonToken.NULL ? skipNull(reader) : readIdentifier(reader);
+                    break;
+                case "version":
+                    version = reader.peek() == JsonToken.NULL ? skipNull(reader) : readVersion(reader);
+                    break;
+                case "path":
+                    path = readString(reader);
+                    break;
+                case "isObfuscated":
+                    hasObfuscated = true;
+                    obfuscated = readBoolean(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (path == null)
+            throw new JsonParseException("Missing path");
+        if (hasObfuscated && obfuscated == null)
+            throw new JsonParseException("Expected a boolean for isObfuscated");
+
+        return MetadataInterner.shared().jar(identifier, version, path, hasObfuscated && obfuscated);
+    }
+
+    private static ContainedJarIdentifier readIdentifier(final JsonReader reader) throws IOException {
+        expectObject(reader);
+        String group = null;
+        String artifact = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "group":
+                    group = readString(reader);
+                    break;
+                case "artifact":
+                    artifact = readString(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        if (group == null || artifact == null)
+            throw new JsonParseException("Missing group or artifact");
+        return new ContainedJarIdentifier(group, artifact);
+    }
+
+    private static ContainedVersion readVersion(final JsonReader reader) throws IOException {
+        expectObject(reader);
+        VersionRange range = null;
+        ArtifactVersion artifactVersion = null;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "range":
+                    range = readRange(reader);
+                    break;
+                case "artifactVersion":
+                    artifactVersion = readArtifactVersion(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new ContainedVersion(range, artifactVersion);
+    }
+
+    private static VersionRange readRange(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL)
+            return skipNull(reader);
+
+        final String spec = readPrimitive(reader, "Expected a string or primitive value");
+        try {
+            return VersionCache.shared().range(spec);
+        } catch (InvalidVersionSpecificationException e) {
+            throw new JsonParseException("Failed to parse version spec from: " + spec, e);
+        }
+    }
+
+    private static ArtifactVersion readArtifactVersion(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL)
+            return skipNull(reader);
+        return VersionCache.shared().version(readPrimitive(reader, "Expected a string"));
+    }
+
+    /**
+     * Reads any primitive as a string, like {@code JsonElement.getAsString()}. Null and missing values are not allowed
+     */
+    private static String readString(final JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL)
+            throw new JsonParseException("Expected a string, but got null");
+        return readPrimitive(reader, "Expected a string");
+    }
+
+    private static String readPrimitive(final JsonReader reader, final String error) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return String.valueOf(reader.nextBoolean());
+            default:
+                throw new JsonParseException(error + ", but got: " + reader.peek());
+        }
+    }
+
+    /**
+     * Reads a boolean like {@code JsonElement.getAsBoolean()}, strings and numbers are parsed, null if the value is null
+     */
+    private static Boolean readBoolean(final JsonReader reader) throws IOException {
+        switch (reader.peek()) {
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case STRING:
+            case NUMBER:
+                return Boolean.parseBoolean(reader.nextString());
+            case NULL:
+                return skipNull(reader);
+            default:
+                throw new JsonParseException("Expected a boolean, but got: " + reader.peek());
+        }
+    }
+
+    private static void expectObject(final JsonReader reader) throws IOException {
+        if (reader.peek() != JsonToken.BEGIN_OBJECT)
+            throw new JsonParseException("Expected object");
+    }
+
+    private static <T> T skipNull(final JsonReader reader) throws IOException {
+        reader.nextNull();
+        return null;
+    }
+}
@@ -11,6 +11,7 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
+import net.minecraftforge.jarjar.metadata.VersionCache;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.artifact.versioning.Restriction;
 import org.apache.maven.artifact.versioning.VersionRange;
@@ -23,7 +24,7 @@ public class VersionRangeSerializer implements JsonSerializer<VersionRange>, Jso
     public VersionRange deserialize(final JsonElement json, final Type typeOfT, final JsonDeserializationContext context) throws JsonParseException {
         if (json.isJsonPrimitive()) {
             try {
-                return VersionRange.createFromVersionSpec(json.getAsString());
+                return VersionCache.shared().range(json.getAsString());
             } catch (InvalidVersionSpecificationException e) {
                 throw new JsonParseException("Failed to parse version spec from: " + json.getAsString(), e);
             }
@@ -37,7 +38,7 @@ public class VersionRangeSerializer implements JsonSerializer<VersionRange>, Jso
         return new JsonPrimitive(serializeRange(src));
     }
 
-    private static String serializeRange(final VersionRange src) {
+    public static String serializeRange(final VersionRange src) {
         return src.getRecommendedVersion() != null
             ? src.getRecommendedVersion().toString()
             : src.getRestrictions()
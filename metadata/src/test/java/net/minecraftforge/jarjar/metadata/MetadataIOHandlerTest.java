@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetadataIOHandlerTest {
+    private static final String[] DOCUMENTS = {
+        "{\"jars\":[{\"identifier\":{\"group\":\"a\",\"artifact\":\"b\"},\"version\":{\"range\":\"[1.0,2.0)\",\"artifactVersion\":\"1.5\"},\"path\":\"META-INF/jarjar/b.jar\",\"isObfuscated\":false}]}",
+        "{\"jars\":[{\"identifier\":{\"group\":\"a\",\"artifact\":\"b\"},\"version\":{\"range\":\"1.0\",\"artifactVersion\":\"1.0\"},\"path\":\"b.jar\"}], \"extra\": {\"ignored\": [1, 2]}}",
+        "{\"jars\":[{\"identifier\":{\"group\":1,\"artifact\":true},\"version\":{\"range\":null},\"path\":2,\"isObfuscated\":\"true\"}, null]}",
+        "{\"jars\":[{\"version\":{},\"path\":\"b.jar\",\"isObfuscated\":1}]}",
+        "{\"jars\":null}",
+        "{}",
+        // Lenient like the tree parser
+        "{jars:[{identifier:{group:a,artifact:b},version:{range:'[1,)',artifactVersion:1.2.3},path:b.jar}]}",
+        // Invalid
+        "",
+        "null",
+        "[]",
+        "{\"jars\":{}}",
+        "{\"jars\":[\"b.jar\"]}",
+        "{\"jars\":[{\"identifier\":{\"group\":\"a\"},\"path\":\"b.jar\"}]}",
+        "{\"jars\":[{\"version\":{\"range\":\"[2.0,1.0]\"},\"path\":\"b.jar\"}]}",
+        "{\"jars\":[{\"path\":\"b.jar\",\"isObfuscated\":null}]}",
+        "{\"jars\":[]} {}",
+    };
+
+    @Test
+    public void streamingMatchesTree() {
+        for (String document : DOCUMENTS) {
+            Optional<Metadata> expected = tree(document);
+            byte[] data = document.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected, MetadataIOHandler.fromStream(new ByteArrayInputStream(data)), document);
+            assertEquals(expected, MetadataIOHandler.fromBuffer(ByteBuffer.wrap(data)), document);
+        }
+    }
+
+    @Test
+    public void roundTrips() throws Exception {
+        Metadata metadata = new Metadata(Arrays.asList(
+            new ContainedJarMetadata(new ContainedJarIdentifier("a", "b"), new ContainedVersion(VersionRange.createFromVersionSpec("[1.0,2.0)"), new DefaultArtifactVersion("1.5")), "META-INF/jarjar/b.jar", false),
+            new ContainedJarMetadata(new ContainedJarIdentifier("\u00e9", "c"), new ContainedVersion(VersionRange.createFromVersionSpec("[3]"), new DefaultArtifactVersion("3")), "META-INF/jarjar/\u00e9.jar", true)
+        ));
+        assertEquals(Optional.of(metadata), MetadataIOHandler.fromStream(MetadataIOHandler.toInputStream(metadata)));
+    }
+
+    @Test
+    public void binaryMatchesJson() {
+        for (String document : DOCUMENTS) {
+            Optional<Metadata> expected = tree(document);
+            if (!expected.isPresent() || expected.get() == null)
+                continue;
+
+            byte[] binary = MetadataIOHandler.toBinary(expected.get());
+            assertEquals(expected, MetadataIOHandler.fromStream(new ByteArrayInputStream(binary)), document);
+            assertEquals(expected, MetadataIOHandler.fromBuffer(ByteBuffer.wrap(binary)), document);
+
+            // Truncated and trailing data are both invalid
+            assertEquals(Optional.empty(), MetadataIOHandler.fromStream(new ByteArrayInputStream(Arrays.copyOf(binary, binary.length - 1))), document);
+            assertEquals(Optional.empty(), MetadataIOHandler.fromStream(new ByteArrayInputStream(Arrays.copyOf(binary, binary.length + 1))), document);
+        }
+    }
+
+    @Test
+    public void decodesPluginBinary() throws Exception {
+        // Written by the jarjar-gradle plugin's own encoder, JarJarMetadata.Action#binary, for the metadata below
+        byte[] plugin = hex(
+            "4a4a4d4201000000031e00016100016200095b312e302c322e30290003312e3500154d4554412d494e462f6a61726a61722f622e6a6172" +
+            "2e0002c3a900016300035b335d00154d4554412d494e462f6a61726a61722f632e6a617201"
+        );
+        Metadata metadata = new Metadata(Arrays.asList(
+            new ContainedJarMetadata(new ContainedJarIdentifier("a", "b"), new ContainedVersion(VersionRange.createFromVersionSpec("[1.0,2.0)"), new DefaultArtifactVersion("1.5")), "META-INF/jarjar/b.jar", false),
+            new ContainedJarMetadata(new ContainedJarIdentifier("\u00e9", "c"), new ContainedVersion(VersionRange.createFromVersionSpec("[3]"), null), "META-INF/jarjar/c.jar", true),
+            null
+        ));
+
+        assertEquals(Optional.of(metadata), MetadataIOHandler.fromStream(new ByteArrayInputStream(plugin)));
+        assertArrayEquals(plugin, MetadataIOHandler.toBinary(metadata));
+    }
+
+    @Test
+    public void indexRoundTrips() throws Exception {
+        Metadata outer = new Metadata(Arrays.asList(
+            new ContainedJarMetadata(new ContainedJarIdentifier("a", "b"), new ContainedVersion(VersionRange.createFromVersionSpec("[1.0,2.0)"), new DefaultArtifactVersion("1.5")), "META-INF/jarjar/b.jar", false)
+        ));
+        Metadata inner = new Metadata(Arrays.asList(
+            new ContainedJarMetadata(new ContainedJarIdentifier("a", "c"), new ContainedVersion(VersionRange.createFromVersionSpec("[3]"), new DefaultArtifactVersion("3")), "META-INF/jarjar/c.jar", true)
+        ));
+        Map<String, Metadata> containers = new LinkedHashMap<>();
+        containers.put("", outer);
+        containers.put(MetadataIndex.child("", "META-INF/jarjar/b.jar"), inner);
+        MetadataIndex index = new MetadataIndex(containers);
+
+        assertEquals(Optional.of(index), MetadataIOHandler.indexFromStream(MetadataIOHandler.toInputStream(index)));
+        assertEquals(inner, index.get("META-INF/jarjar/b.jar"));
+        assertEquals("META-INF/jarjar/b.jar!/META-INF/jarjar/c.jar", MetadataIndex.child("META-INF/jarjar/b.jar", "META-INF/jarjar/c.jar"));
+
+        // Plain metadata is not an index
+        assertEquals(Optional.empty(), MetadataIOHandler.indexFromStream(MetadataIOHandler.toInputStream(outer)));
+    }
+
+    @Test
+    public void equalJarsShareInstances() {
+        String document = "{\"jars\":[" +
+            "{\"identifier\":{\"group\":\"a\",\"artifact\":\"b\"},\"version\":{\"range\":\"[1.0,)\",\"artifactVersion\":\"1.0\"},\"path\":\"b.jar\"}," +
+            "{\"identifier\":{\"group\":\"a\",\"artifact\":\"b\"},\"version\":{\"range\":\"[1.0,)\",\"artifactVersion\":\"1.0\"},\"path\":\"c.jar\"}]}";
+        Metadata first = MetadataIOHandler.fromStream(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8))).get();
+        Metadata second = MetadataIOHandler.fromBuffer(ByteBuffer.wrap(MetadataIOHandler.toBinary(first))).get();
+
+        assertSame(first.jars().get(0), second.jars().get(0));
+        assertSame(first.jars().get(1), second.jars().get(1));
+        // Different paths, but the same library
+        assertSame(first.jars().get(0).identifier(), first.jars().get(1).identifier());
+        assertSame(first.jars().get(0).version(), first.jars().get(1).version());
+        assertEquals(first.jars().get(0).version().hashCode(), new ContainedVersion(first.jars().get(0).version().range(), first.jars().get(0).version().artifactVersion()).hashCode());
+    }
+
+    private static byte[] hex(String data) {
+        byte[] ret = new byte[data.length() / 2];
+        for (int x = 0; x < ret.length; x++)
+            ret[x] = (byte)Integer.parseInt(data.substring(x * 2, x * 2 + 2), 16);
+        return ret;
+    }
+
+    private static Optional<Metadata> tree(String document) {
+        try {
+            return Optional.of(MetadataIOHandler.getGson().fromJson(document, Metadata.class));
+        } catch (Exception e) {
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionCacheTest {
+    @Test
+    public void sharesParsedInstances() throws Exception {
+        VersionCache cache = new VersionCache(16);
+        VersionRange range = cache.range("[1.0,2.0)");
+        assertSame(range, cache.range("[1.0,2.0)"));
+        assertEquals(VersionRange.createFromVersionSpec("[1.0,2.0)"), range);
+
+        assertSame(cache.version("1.2.3"), cache.version("1.2.3"));
+        assertEquals(new DefaultArtifactVersion("1.2.3"), cache.version("1.2.3"));
+
+        assertThrows(InvalidVersionSpecificationException.class, () -> cache.range("[2.0,1.0]"));
+        assertEquals(3, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(0.5, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void staysBounded() {
+        VersionCache cache = new VersionCache(4);
+        ArtifactVersion used = cache.version("0");
+        ArtifactVersion unused = cache.version("unused");
+        for (int x = 1; x < 100; x++) {
+            cache.version(Integer.toString(x));
+            // Kept by being used, everything else is dropped
+            assertSame(used, cache.version("0"));
+        }
+        assertNotSame(unused, cache.version("unused"));
+
+        cache.clear();
+        assertEquals(0, cache.getHits() + cache.getMisses());
+        assertNotSame(used, cache.version("0"));
+    }
+
+    @Test
+    public void concurrentLookupsAgree() throws Exception {
+        VersionCache cache = new VersionCache(8);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<VersionRange>> futures = new ArrayList<>();
+            for (int x = 0; x < 64; x++)
+                futures.add(executor.submit(() -> cache.range("[1.0,)")));
+            VersionRange first = futures.get(0).get();
+            for (Future<VersionRange> future : futures)
+                assertSame(first, future.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.metadata;
+
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class VersionKeyTest {
+    private static final String[] QUALIFIERS = { "alpha", "beta", "rc1", "SNAPSHOT", "final", "ga", "sp", "foo" };
+
+    @Test
+    public void ordersLikeMaven() {
+        Random random = new Random(42);
+        List<ArtifactVersion> versions = new ArrayList<>();
+        for (int x = 0; x < 400; x++)
+            versions.add(new DefaultArtifactVersion(version(random)));
+
+        int packed = 0;
+        for (ArtifactVersion a : versions) {
+            VersionKey key = VersionKey.of(a);
+            if (key.isPacked())
+                packed++;
+            for (ArtifactVersion b : versions)
+                assertEquals(Integer.signum(a.compareTo(b)), Integer.signum(key.compareTo(VersionKey.of(b))), a + " <=> " + b);
+        }
+        // Make sure the fast path is actually tested
+        assertTrue(packed > 100, "Only " + packed + " packed versions");
+    }
+
+    @Test
+    public void containsLikeMaven() throws InvalidVersionSpecificationException {
+        Random random = new Random(7);
+        for (int x = 0; x < 300; x++) {
+            VersionRange range = VersionRange.createFromVersionSpec(range(random));
+            VersionKeyRange keys = VersionKeyRange.of(range);
+            for (int y = 0; y < 30; y++) {
+                ArtifactVersion version = new DefaultArtifactVersion(version(random));
+                assertEquals(range.containsVersion(version), keys.contains(VersionKey.of(version)), range + " contains " + version);
+            }
+        }
+    }
+
+    @Test
+    public void packsEdgeCases() {
+        assertTrue(VersionKey.of(new DefaultArtifactVersion("65535.0.0.65535")).isPacked());
+        assertFalse(VersionKey.of(new DefaultArtifactVersion("65536")).isPacked());
+        assertFalse(VersionKey.of(new DefaultArtifactVersion("1.2.3.4.5")).isPacked());
+        assertFalse(VersionKey.of(new DefaultArtifactVersion("1.")).isPacked());
+        assertFalse(VersionKey.of(new DefaultArtifactVersion("1-SNAPSHOT")).isPacked());
+        assertEquals(0, VersionKey.of(new DefaultArtifactVersion("1")).compareTo(VersionKey.of(new DefaultArtifactVersion("1.0.0"))));
+        assertTrue(VersionKey.of(new DefaultArtifactVersion("40000")).compareTo(VersionKey.of(new DefaultArtifactVersion("2"))) > 0);
+    }
+
+    private static String version(Random random) {
+        StringBuilder ret = new StringBuilder();
+        int components = 1 + random.nextInt(5);
+        for (int x = 0; x < components; x++) {
+            if (x > 0)
+                ret.append('.');
+            ret.append(component(random));
+        }
+        if (random.nextInt(5) == 0)
+            ret.append(random.nextBoolean() ? '-' : '.').append(QUALIFIERS[random.nextInt(QUALIFIERS.length)]);
+        return ret.toString();
+    }
+
+    private static String component(Random random) {
+        switch (random.nextInt(8)) {
+            case 0: return "0";
+            case 1: return Integer.toString(40000 + random.nextInt(40000));
+            case 2: return "0" + random.nextInt(3);
+            default: return Integer.toString(random.nextInt(4));
+        }
+    }
+
+    private static String range(Random random) {
+        StringBuilder ret = new StringBuilder();
+        int restrictions = 1 + random.nextInt(2);
+        List<ArtifactVersion> bounds = new ArrayList<>();
+        for (int x = 0; x < restrictions * 2; x++)
+            bounds.add(new DefaultArtifactVersion(version(random)));
+        bounds.sort(null);
+
+        for (int x = 0; x < restrictions; x++) {
+            ArtifactVersion lower = bounds.get(x * 2);
+            ArtifactVersion upper = bounds.get(x * 2 + 1);
+            // Maven rejects overlapping and empty restrictions, give each its own stretch
+            if (x > 0 && lower.compareTo(bounds.get(x * 2 - 1)) <= 0)
+                break;
+            if (x > 0)
+                ret.append(',');
+
+            boolean open = lower.compareTo(upper) == 0;
+            ret.append(open || random.nextBoolean() ? '[' : '(');
+            if (open || x > 0 || random.nextInt(4) != 0)
+                ret.append(lower);
+            ret.append(',');
+            if (open || x < restrictions - 1 || random.nextInt(4) != 0)
+                ret.append(upper);
+            ret.append(open || random.nextBoolean() ? ']' : ')');
+        }
+        return ret.toString();
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Objects;
+
+/**
+ * Limits on how much work a {@link JarSelector} does while discovering nested jars, so a single badly built source can't stall it.
+ * When a limit is hit, discovery stops with a {@link DiscoveryBudgetExceededException}.
+ * <p>
+ * Instances are immutable, every {@code with} method returns a copy.
+ */
+public final class DiscoveryBudget {
+    private static final DiscoveryBudget UNLIMITED = new DiscoveryBudget(Byte.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, null);
+
+    private final int maxDepth;
+    private final int maxNested;
+    private final int maxDetections;
+    @Nullable private final Duration timeout;
+
+    private DiscoveryBudget(int maxDepth, int maxNested, int maxDetections, @Nullable Duration timeout) {
+        this.maxDepth = maxDepth;
+        this.maxNested = maxNested;
+        this.maxDetections = maxDetections;
+        this.timeout = timeout;
+    }
+
+    public static DiscoveryBudget unlimited() {
+        return UNLIMITED;
+    }
+
+    /** The deepest nesting level a jar can be found at, jars directly inside an added source are at depth 1 */
+    public DiscoveryBudget withMaxDepth(int maxDepth) {
+        if (maxDepth < 1)
+            throw new IllegalArgumentException("Max depth must be at least 1: " + maxDepth);
+        return new DiscoveryBudget(Math.min(maxDepth, Byte.MAX_VALUE), maxNested, maxDetections, timeout);
+    }
+
+    /** The most jars a single source can contain */
+    public DiscoveryBudget withMaxNested(int maxNested) {
+        if (maxNested < 0)
+            throw new IllegalArgumentException("Max nested jars must not be negative: " + maxNested);
+        return new DiscoveryBudget(maxDepth, maxNested, maxDetections, timeout);
+    }
+
+    /** The most nested jars the selector records in total, over every source added to it */
+    public DiscoveryBudget withMaxDetections(int maxDetections) {
+        if (maxDetections < 0)
+            throw new IllegalArgumentException("Max detections must not be negative: " + maxDetections);
+        return new DiscoveryBudget(maxDepth, maxNested, maxDetections, timeout);
+    }
+
+    /**
+     * How long a single call that adds sources can spend discovering their nested jars.
+     * Checked before every read, so a read that already started is finished but nothing else is read once it runs out.
+     */
+    public DiscoveryBudget withTimeout(Duration timeout) {
+        Objects.requireNonNull(timeout, "timeout");
+        if (timeout.isNegative())
+            throw new IllegalArgumentException("Timeout must not be negative: " + timeout);
+        return new DiscoveryBudget(maxDepth, maxNested, maxDetections, timeout);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxNested() {
+        return maxNested;
+    }
+
+    public int getMaxDetections() {
+        return maxDetections;
+    }
+
+    @Nullable
+    public Duration getTimeout() {
+        return timeout;
+    }
+
+    /** The time discovery must be finished by, as {@link System#nanoTime()}, or {@link Long#MAX_VALUE} without a timeout */
+    long deadline() {
+        if (timeout == null)
+            return Long.MAX_VALUE;
+
+        long now = System.nanoTime();
+        try {
+            return Math.addExact(now, timeout.toNanos());
+        } catch (ArithmeticException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DiscoveryBudget[maxDepth=" + maxDepth + ", maxNested=" + maxNested + ", maxDetections=" + maxDetections + ", timeout=" + timeout + "]";
+    }
+}
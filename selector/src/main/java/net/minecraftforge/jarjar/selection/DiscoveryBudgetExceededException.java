@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+/**
+ * Thrown when discovering nested jars goes over a limit of the {@link DiscoveryBudget} set on a {@link JarSelector}.
+ * Nothing from the nesting level that went over the limit is recorded, the selector should be cleared before it is used again.
+ */
+public class DiscoveryBudgetExceededException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Limit {
+        DEPTH("nesting depth"),
+        NESTED("nested jars in a single source"),
+        DETECTIONS("nested jars in total"),
+        TIMEOUT("discovery time in milliseconds");
+
+        private final String description;
+
+        Limit(String description) {
+            this.description = description;
+        }
+    }
+
+    private final Limit limit;
+    private final long max;
+    private final long actual;
+    private final String location;
+
+    public DiscoveryBudgetExceededException(Limit limit, long max, long actual, String location) {
+        super("Stopped discovering nested jars at " + location + ": " + actual + " " + limit.description + " is over the limit of " + max);
+        this.limit = limit;
+        this.max = max;
+        this.actual = actual;
+        this.location = location;
+    }
+
+    public Limit getLimit() {
+        return limit;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public long getActual() {
+        return actual;
+    }
+
+    /** Where discovery stopped, the identifier of the added source followed by the path of each nested jar leading to it */
+    public String getLocation() {
+        return location;
+    }
+}
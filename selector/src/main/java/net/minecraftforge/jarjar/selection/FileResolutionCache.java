@@ -0,0 +1,60 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps a single resolution in a text file, the first line is the fingerprint and every other line is a winner.
+ */
+final class FileResolutionCache implements ResolutionCache {
+    private final Path path;
+
+    FileResolutionCache(Path path) {
+        this.path = path;
+    }
+
+    @Override
+    @Nullable
+    public List<String> get(String fingerprint) throws IOException {
+        if (!Files.exists(path))
+            return null;
+
+        List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !lines.get(0).equals(fingerprint))
+            return null;
+
+        return new ArrayList<>(lines.subList(1, lines.size()));
+    }
+
+    @Override
+    public void put(String fingerprint, List<String> winners) throws IOException {
+        List<String> lines = new ArrayList<>(winners.size() + 1);
+        lines.add(fingerprint);
+        lines.addAll(winners);
+
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        // Write to a temp file first, so a crash never leaves a partial cache behind
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+}
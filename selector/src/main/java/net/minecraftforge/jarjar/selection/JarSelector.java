@@ -11,15 +11,28 @@ import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.BiFunction;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.Supplier;
 
 public abstract class JarSelector<T> {
     protected JarSelector() { }
@@ -27,6 +40,13 @@ public abstract class JarSelector<T> {
     private static final Logger LOGGER = LoggerFactory.getLogger(JarSelector.class);
 
     public static final String CONTAINED_JARS_METADATA_PATH = "META-INF/jarjar/metadata.json";
+    /** Binary copy of the metadata, read instead of the JSON when present and valid if enabled with {@link #setBinaryMetadata(boolean)}. See {@link MetadataIOHandler#toBinary(Metadata)}. */
+    public static final String CONTAINED_JARS_BINARY_METADATA_PATH = "META-INF/jarjar/metadata.bin";
+    /** Metadata of every nested jar, however deep, read from added sources instead of opening them when present if enabled with {@link #setMetadataIndex(boolean)}. See {@link MetadataIndex}. */
+    public static final String CONTAINED_JARS_INDEX_PATH = "META-INF/jarjar/index.json";
+
+    // Returned when peeking isn't possible, so the nested jar has to be opened to find out what's in it
+    private static final Metadata NOT_PEEKED = new Metadata(Collections.emptyList());
 
     @Deprecated //(forRemoval = true)
     public static <T, E extends Throwable> List<T> detectAndSelect(
@@ -64,11 +84,53 @@ public abstract class JarSelector<T> {
         return selector.select();
     }
 
-    private final Set<T> seen = new HashSet<>();
-    private final Set<DetectionResult<T>> detected = new HashSet<>();
+    // Guards all state below, except the concurrent collections which are also read without it. Never held while reading sources.
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Set<T> seen = ConcurrentHashMap.newKeySet();
+    // First source read for each content identity, and sources that were not read because they have the same contents as one that was
+    private final Map<Object, T> contents = new ConcurrentHashMap<>();
+    private final Map<T, T> copies = new ConcurrentHashMap<>();
+    // Copies whose original is still being read by another thread, by original, with the depth of the copy
+    private final Map<T, Map<T, Byte>> waiting = new HashMap<>();
+    // Every detection, options and requirements included, grouped by the identifier they are for
+    private final Map<ContainedJarIdentifier, Set<DetectionResult<T>>> detected = new HashMap<>();
     // Identifiers claimed by the source files, these will override any nested resolutions
-    private final Map<String, T> claimed = new HashMap<>();
-    private final Set<ContainedJarIdentifier> identifiers = new HashSet<>();
+    private final Map<String, T> claimed = new ConcurrentHashMap<>();
+    // Jar-in-jar identifiers of forced sources that were also given as options, nested copies of these don't need to be scanned
+    private final Set<ContainedJarIdentifier> claimedIdentifiers = ConcurrentHashMap.newKeySet();
+    private final Set<ContainedJarIdentifier> identifiers = ConcurrentHashMap.newKeySet();
+    // Sources created by getNested, which are ours to release if they don't get selected
+    private final Set<T> opened = new HashSet<>();
+    // Sources we released, and where nested sources came from so they can be opened again if a later selection needs them
+    private final Set<T> released = new HashSet<>();
+    private final Map<T, Origin<T>> origins = new HashMap<>();
+    // Nested jars that were only peeked at, and the sources opened for them when they were needed
+    private final Map<Origin<T>, T> materialized = new LinkedHashMap<>();
+    // Metadata read while peeking at nested jars that had to be opened anyway, used instead of reading it again when they are scanned
+    private final Map<T, Metadata> peeked = new ConcurrentHashMap<>();
+
+    // What every source contributed, so that removing one doesn't need anything to be read again
+    private final Set<T> roots = new HashSet<>();
+    private final Map<T, List<DetectionResult<T>>> scanned = new HashMap<>();
+    private final Map<T, List<DetectionResult<T>>> options = new HashMap<>();
+    private final List<ContainedJarMetadata> requirements = new ArrayList<>();
+
+    // Results of the last select, only identifiers whose detections changed since then are resolved again
+    private final Map<ContainedJarIdentifier, SelectionResult<T>> results = new HashMap<>();
+    private final Set<ContainedJarIdentifier> dirty = new HashSet<>();
+
+    // With a cache, added sources are only read when the cache can't answer select()
+    @Nullable private volatile ResolutionCache cache;
+    private final List<T> deferred = new ArrayList<>();
+    @Nullable private Executor deferredExecutor;
+
+    private volatile SelectionListener<T> listener = SelectionListener.none();
+    private volatile boolean binaryMetadata;
+    private volatile boolean metadataIndex;
+    private volatile DiscoveryBudget budget = DiscoveryBudget.unlimited();
+    // Number of nested jars recorded in scanned, counted against the budget
+    private int detections;
 
     /**
      * Returns if a dependency has been requested by something added by {@link #add(T)} or {@link #addRequirement(ContainedJarMetadata)}
@@ -81,6 +143,12 @@ public abstract class JarSelector<T> {
      * Returns if a dependency has been requested by something added by {@link #add(T)} or {@link #addRequirement(ContainedJarMetadata)}
      */
     public boolean isRequired(ContainedJarIdentifier identifier) {
+        lock.lock();
+        try {
+            flush();
+        } finally {
+            lock.unlock();
+        }
         return identifiers.contains(identifier);
     }
 
@@ -105,6 +173,140 @@ public abstract class JarSelector<T> {
      */
     protected abstract Throwable getFailureException(Collection<ResolutionFailureInformation<T>> failures);
 
+    /**
+     * Asynchronous version of {@link #getResource(Object, String)}, used by {@link #addAsync(Collection)}.
+     * Override this if reading is slow and can be done without blocking a thread, by default this calls {@link #getResource(Object, String)}.
+     */
+    protected CompletableFuture<InputStream> getResourceAsync(T source, String path) {
+        return CompletableFuture.completedFuture(getResource(source, path));
+    }
+
+    /**
+     * Asynchronous version of {@link #getNested(Object, String)}, used by {@link #addAsync(Collection)}.
+     * Override this if opening is slow and can be done without blocking a thread, by default this calls {@link #getNested(Object, String)}.
+     */
+    protected CompletableFuture<T> getNestedAsync(T source, String path) {
+        return CompletableFuture.completedFuture(getNested(source, path));
+    }
+
+    /**
+     * Return the identification string {@link #getIdentifier(Object)} would return for the nested jar described by this metadata, or null if it can't be known without opening it.
+     * Nested jars whose identification is claimed by a forced source are neither opened nor scanned, as they can never be selected.
+     */
+    @Nullable
+    protected String getNestedIdentifier(ContainedJarMetadata jar) {
+        return null;
+    }
+
+    /**
+     * Return true if {@link #peekNested(Object, String, String)} can read from jars nested in this source.
+     * Nested jars are then only opened with {@link #getNested(Object, String)} if they contain jars themselves, or once they are selected.
+     */
+    protected boolean canPeek(T source) {
+        return false;
+    }
+
+    /**
+     * Return a input stream for a resource inside the jar at {@code nested} in the given source, without opening the nested jar as a source.
+     * Only called if {@link #canPeek(Object)} returns true for the source.
+     */
+    @Nullable
+    protected InputStream peekNested(T source, String nested, String path) {
+        return null;
+    }
+
+    /**
+     * Asynchronous version of {@link #peekNested(Object, String, String)}, used by {@link #addAsync(Collection)}.
+     * Override this if peeking is slow and can be done without blocking a thread, by default this calls {@link #peekNested(Object, String, String)}.
+     */
+    protected CompletableFuture<InputStream> peekNestedAsync(T source, String nested, String path) {
+        return CompletableFuture.completedFuture(peekNested(source, nested, path));
+    }
+
+    /**
+     * Return the metadata read from this source before, or null to read it with {@link #getResource(Object, String)}.
+     * A source without metadata can return an empty {@link Metadata}, sources returned from here are not reported to the listener as read.
+     */
+    @Nullable
+    protected Metadata getCachedMetadata(T source) {
+        return null;
+    }
+
+    /**
+     * Called after the metadata of a source was read with {@link #getResource(Object, String)}, or {@link #peekNested(Object, String, String)} before it was opened.
+     * Metadata is null if the source has none or it failed to parse.
+     */
+    protected void metadataRead(T source, @Nullable Metadata metadata) { }
+
+    /**
+     * Return a string that changes whenever the contents of the source change, such as its identifier, size and modification time.
+     * Used by the {@link ResolutionCache}, returning null disables the cache for any selection involving this source.
+     */
+    @Nullable
+    protected String getFingerprint(T source) {
+        return null;
+    }
+
+    /**
+     * Return a value identifying the contents of the source, such as its size and CRC, or a hash of its metadata.
+     * Sources with equal content identities are assumed to contain the same jars, so only the least nested one is read,
+     * and the others are treated as containing the same nested sources. Returning null always reads the source.
+     */
+    @Nullable
+    protected Object getContentIdentity(T source) {
+        return null;
+    }
+
+    /**
+     * Release any resources held by a source created by {@link #getNested(Object, String)}, such as an open file system.
+     * Called by {@link #select()} for every nested source that was not selected, and by {@link #clear()}.
+     * Sources passed in by the caller, and sources returned by {@link #select()}, are never released by the selector.
+     * <p>
+     * If a released source is needed by a later {@link #select()}, for example after {@link #remove(Object)}, it is opened again
+     * by calling {@link #getNested(Object, String)} on its parent, so that should return an equal source for the same parent and path.
+     */
+    protected void release(T source) { }
+
+    /**
+     * Sets the cache used to skip discovery and resolution when everything given to the selector is the same as a previous run.
+     * With a cache, added sources are only read if {@link #select()} misses the cache, or {@link #isRequired(ContainedJarIdentifier)} is called.
+     * This requires {@link #getFingerprint(Object)} to be implemented, and should be set before anything is added.
+     */
+    public void setResolutionCache(@Nullable ResolutionCache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Sets the limits on discovering nested jars, {@link DiscoveryBudget#unlimited()} by default.
+     * Going over a limit makes the call that added the sources throw a {@link DiscoveryBudgetExceededException}.
+     */
+    public void setDiscoveryBudget(DiscoveryBudget budget) {
+        this.budget = Objects.requireNonNull(budget, "budget");
+    }
+
+    /**
+     * Sets if jars are checked for {@link #CONTAINED_JARS_BINARY_METADATA_PATH} before the JSON metadata, false by default.
+     * Only enable this if the jars being selected from are built with it, otherwise every jar costs one more lookup that finds nothing.
+     */
+    public void setBinaryMetadata(boolean enabled) {
+        this.binaryMetadata = enabled;
+    }
+
+    /**
+     * Sets if added sources are checked for {@link #CONTAINED_JARS_INDEX_PATH} before their own metadata, false by default.
+     * Only enable this if the jars being added are built with it, otherwise every added jar costs one more lookup that finds nothing.
+     */
+    public void setMetadataIndex(boolean enabled) {
+        this.metadataIndex = enabled;
+    }
+
+    /**
+     * Sets the listener that receives events about discovery and selection, {@link SelectionListener#NONE} to disable.
+     */
+    public void setListener(SelectionListener<T> listener) {
+        this.listener = Objects.requireNonNull(listener, "listener");
+    }
+
     /**
      * Force a version as a 'root' value.
      * This causes them to override any nested dependency with the same identifier.
@@ -113,9 +315,16 @@ public abstract class JarSelector<T> {
      */
     public void force(T source) {
         String id = getIdentifier(source);
-        T old = claimed.putIfAbsent(id, source);
-        if (old != null)
-            LOGGER.warn("Attempted to force two jars which have the same identification {}: {} and {}. Using {}", id, old, source, old);
+        lock.lock();
+        try {
+            T old = claimed.putIfAbsent(id, source);
+            if (old != null)
+                LOGGER.warn("Attempted to force two jars which have the same identification {}: {} and {}. Using {}", id, old, source, old);
+            else
+                claimOptions(source);
+        } finally {
+            lock.unlock();
+        }
 
         add(source);
     }
@@ -127,11 +336,18 @@ public abstract class JarSelector<T> {
      * Also calls {@link #add(Collection<T>)} on the sources.
      */
     public void force(Collection<T> sources) {
-        for (T source : sources) {
-            String id = getIdentifier(source);
-            T old = claimed.putIfAbsent(id, source);
-            if (old != null)
-                LOGGER.warn("Attempted to force two jars which have the same identification {}: {} and {}. Using {}", id, old, source, old);
+        lock.lock();
+        try {
+            for (T source : sources) {
+                String id = getIdentifier(source);
+                T old = claimed.putIfAbsent(id, source);
+                if (old != null)
+                    LOGGER.warn("Attempted to force two jars which have the same identification {}: {} and {}. Using {}", id, old, source, old);
+                else
+                    claimOptions(source);
+            }
+        } finally {
+            lock.unlock();
         }
 
         add(sources);
@@ -144,7 +360,21 @@ public abstract class JarSelector<T> {
      * This does NOT call {@link #add(T)}, so if you expect this source to have nested jars, call it yourself
      */
     public void option(T source, ContainedJarMetadata meta) {
-        this.detected.add(new DetectionResult<>(meta, source, (byte)0));
+        DetectionResult<T> detection = new DetectionResult<>(meta, source, (byte)0);
+        lock.lock();
+        try {
+            this.options.computeIfAbsent(source, k -> new ArrayList<>()).add(detection);
+            detect(detection);
+            if (claimed.containsValue(source))
+                claimedIdentifiers.add(meta.identifier());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void claimOptions(T source) {
+        for (DetectionResult<T> detection : options.getOrDefault(source, Collections.emptyList()))
+            claimedIdentifiers.add(detection.metadata.identifier());
     }
 
     /**
@@ -152,8 +382,131 @@ public abstract class JarSelector<T> {
      * This is meant to be used in conjuction with {@link #option(T,ContainedJarMetadata)} to add transitive dependencies.
      */
     public void addRequirement(ContainedJarMetadata meta) {
-        this.detected.add(new DetectionResult<>(meta, null, (byte)0));
-        this.identifiers.add(meta.identifier());
+        lock.lock();
+        try {
+            this.requirements.add(meta);
+            detect(new DetectionResult<>(meta, null, (byte)0));
+            this.identifiers.add(meta.identifier());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a source that was passed to {@link #add(Object)}, {@link #force(Object)} or {@link #option(Object, ContainedJarMetadata)},
+     * along with everything nested in it that isn't also reachable from another source.
+     * Nothing is read again, and the next {@link #select()} only resolves the identifiers that were affected.
+     */
+    public void remove(T source) {
+        lock.lock();
+        try {
+            remove0(source);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove0(T source) {
+        deferred.remove(source);
+        boolean changed = roots.remove(source);
+        changed |= options.remove(source) != null;
+        if (claimed.values().removeIf(source::equals)) {
+            changed = true;
+            claimedIdentifiers.clear();
+            for (T forced : claimed.values())
+                claimOptions(forced);
+        }
+        if (!changed)
+            return;
+
+        Set<T> reachable = new HashSet<>();
+        Queue<T> queue = new ArrayDeque<>(roots);
+        while (!queue.isEmpty()) {
+            T current = queue.remove();
+            if (!reachable.add(current))
+                continue;
+
+            for (DetectionResult<T> detection : scanned.getOrDefault(current, Collections.emptyList())) {
+                if (detection.source != null)
+                    queue.add(detection.source);
+            }
+        }
+
+        for (Iterator<T> itr = seen.iterator(); itr.hasNext(); ) {
+            T current = itr.next();
+            if (reachable.contains(current))
+                continue;
+
+            itr.remove();
+            scanned.remove(current);
+            copies.remove(current);
+            released.remove(current);
+            if (opened.remove(current) && !claimed.containsValue(current))
+                release0(current);
+        }
+
+        contents.values().removeIf(current -> !seen.contains(current));
+
+        // Parents are materialized before the jars opened from them, so this keeps whole chains
+        Set<T> kept = new HashSet<>();
+        for (Iterator<Entry<Origin<T>, T>> itr = materialized.entrySet().iterator(); itr.hasNext(); ) {
+            Entry<Origin<T>, T> entry = itr.next();
+            if (seen.contains(entry.getKey().parent) || kept.contains(entry.getKey().parent)) {
+                kept.add(entry.getValue());
+                continue;
+            }
+
+            itr.remove();
+            released.remove(entry.getValue());
+            if (opened.remove(entry.getValue()))
+                release0(entry.getValue());
+        }
+
+        // Something may have been found through the removed source first, so point it at a parent we still have
+        origins.clear();
+        for (Entry<Origin<T>, T> entry : materialized.entrySet())
+            origins.put(entry.getValue(), entry.getKey());
+        for (Entry<T, List<DetectionResult<T>>> entry : scanned.entrySet()) {
+            for (DetectionResult<T> detection : entry.getValue()) {
+                if (detection.source != null)
+                    origins.putIfAbsent(detection.source, new Origin<>(entry.getKey(), detection.metadata.path()));
+            }
+        }
+
+        Map<ContainedJarIdentifier, Set<DetectionResult<T>>> detected = new HashMap<>();
+        identifiers.clear();
+        this.detections = 0;
+        for (List<DetectionResult<T>> detections : scanned.values()) {
+            this.detections += detections.size();
+            for (DetectionResult<T> detection : detections) {
+                detected.computeIfAbsent(detection.metadata.identifier(), k -> new HashSet<>()).add(detection);
+                identifiers.add(detection.metadata.identifier());
+            }
+        }
+        for (List<DetectionResult<T>> detections : options.values()) {
+            for (DetectionResult<T> detection : detections)
+                detected.computeIfAbsent(detection.metadata.identifier(), k -> new HashSet<>()).add(detection);
+        }
+        for (ContainedJarMetadata meta : requirements) {
+            detected.computeIfAbsent(meta.identifier(), k -> new HashSet<>()).add(new DetectionResult<>(meta, null, (byte)0));
+            identifiers.add(meta.identifier());
+        }
+
+        Set<ContainedJarIdentifier> affected = new HashSet<>(this.detected.keySet());
+        affected.addAll(detected.keySet());
+        for (ContainedJarIdentifier identifier : affected) {
+            if (!Objects.equals(this.detected.get(identifier), detected.get(identifier)))
+                dirty.add(identifier);
+        }
+
+        this.detected.clear();
+        this.detected.putAll(detected);
+    }
+
+    private void detect(DetectionResult<T> detection) {
+        ContainedJarIdentifier identifier = detection.metadata.identifier();
+        if (this.detected.computeIfAbsent(identifier, k -> new HashSet<>()).add(detection))
+            this.dirty.add(identifier);
     }
 
     /**
@@ -167,181 +520,789 @@ public abstract class JarSelector<T> {
      * Recursively scans a collection of sources source for jar-in-jar libraries
      */
     public void add(Collection<T> source) {
-        Map<T, Byte> depths = new HashMap<>();
+        discover(source, null);
+    }
 
-        Queue<T> queue = new ArrayDeque<>(source);
-        while (!queue.isEmpty()) {
-            T current = queue.remove();
+    /**
+     * Recursively scans a collection of sources for jar-in-jar libraries, reading every source of a nesting level in parallel on the given executor.
+     * {@link #getResource(Object, String)} and {@link #getNested(Object, String)} will be called concurrently, so they must be thread safe.
+     * The result of {@link #select()} is the same as {@link #add(Collection)}.
+     */
+    public void add(Collection<T> source, Executor executor) {
+        discover(source, Objects.requireNonNull(executor, "executor"));
+    }
 
+    /**
+     * Recursively scans a collection of sources for jar-in-jar libraries using {@link #getResourceAsync(Object, String)} and {@link #getNestedAsync(Object, String)}.
+     * Every source of a nesting level is requested at once, so reads can be in flight together without a thread waiting on each.
+     * Sources are only taken into account by {@link #select()} once the returned future completes.
+     */
+    public CompletableFuture<Void> addAsync(Collection<T> source) {
+        lock.lock();
+        try {
+            roots.addAll(source);
+            if (cache != null) {
+                deferred.addAll(source);
+                return CompletableFuture.completedFuture(null);
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        return discoverAsync(new ArrayList<>(source), (byte)1, budget.deadline());
+    }
+
+    private CompletableFuture<Void> discoverAsync(List<T> frontier, byte depth, long deadline) {
+        if (frontier.isEmpty())
+            return CompletableFuture.completedFuture(null);
+
+        List<T> copies = new ArrayList<>();
+        List<T> pending = visit(frontier, copies);
+        List<CompletableFuture<Scan<T>>> futures = new ArrayList<>(pending.size());
+        for (T current : pending)
+            futures.add(scanAsync(current, depth - 1, deadline));
+
+        // allOf waits for every scan even if one fails, so everything the others opened can be released
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, t) -> join(futures)).thenCompose(scans ->
+            // Just in case this rolls over. People are crazy
+            discoverAsync(mergeLocked(pending, scans, copies, depth, deadline), depth < Byte.MAX_VALUE ? (byte)(depth + 1) : depth, deadline)
+        );
+    }
+
+    private void discover(Collection<T> source, @Nullable Executor executor) {
+        lock.lock();
+        try {
+            roots.addAll(source);
+            if (cache != null) {
+                deferred.addAll(source);
+                if (executor != null)
+                    deferredExecutor = executor;
+                return;
+            }
+        } finally {
+            lock.unlock();
+        }
+
+        walk(source, executor);
+    }
+
+    /**
+     * Reads anything that was added while waiting to see if the cache could answer {@link #select()}
+     */
+    private void flush() {
+        if (deferred.isEmpty())
+            return;
+
+        List<T> source = new ArrayList<>(deferred);
+        Executor executor = deferredExecutor;
+        deferred.clear();
+        deferredExecutor = null;
+        walk(source, executor);
+    }
+
+    private void walk(Collection<T> source, @Nullable Executor executor) {
+        // Breadth first, one nesting level at a time. Everything in a level has the same depth, so the reads can happen in any order.
+        List<T> frontier = new ArrayList<>(source);
+        byte depth = 1;
+        long deadline = budget.deadline();
+        while (!frontier.isEmpty()) {
+            List<T> copies = new ArrayList<>();
+            List<T> pending = visit(frontier, copies);
+            frontier = mergeLocked(pending, scan(pending, executor, depth - 1, deadline), copies, depth, deadline);
+            if (depth < Byte.MAX_VALUE) // Just in case this rolls over. People are crazy
+                depth++;
+        }
+    }
+
+    /**
+     * Marks the sources as seen, returning the ones that have not been processed before.
+     * Sources with the same contents as one that was already found are added to copies instead, they don't need to be read.
+     */
+    private List<T> visit(List<T> frontier, List<T> copies) {
+        List<T> pending = new ArrayList<>(frontier.size());
+        for (T current : frontier) {
             // We've already seen this, skip re-procesing
             if (!seen.add(current))
                 continue;
 
-            Metadata metadata = null;
-            try (InputStream is = getResource(current, CONTAINED_JARS_METADATA_PATH)) {
-                if (is == null)
-                    continue;
+            Object identity = getContentIdentity(current);
+            T original = identity == null ? null : contents.putIfAbsent(identity, current);
+            if (original == null || original.equals(current))
+                pending.add(current);
+            else {
+                this.copies.put(current, original);
+                copies.add(current);
+            }
+        }
+        return pending;
+    }
 
-                metadata = MetadataIOHandler.fromStream(is).orElse(null);
-            } catch (IOException e) {
-                LOGGER.error("Failed to parse metadata", e);
+    private List<T> mergeLocked(List<T> sources, List<Scan<T>> scans, List<T> copies, byte depth, long deadline) {
+        lock.lock();
+        try {
+            DiscoveryBudgetExceededException exceeded = checkBudget(sources, scans, depth, deadline);
+            if (exceeded != null) {
+                releaseUnmerged(scans);
+                throw exceeded;
             }
 
-            if (metadata == null)
+            List<T> next = merge(sources, scans, depth);
+            for (T copy : copies) {
+                T original = this.copies.get(copy);
+                List<DetectionResult<T>> detections = scanned.get(original);
+                if (detections != null)
+                    copy(copy, detections, depth);
+                else
+                    waiting.computeIfAbsent(original, k -> new LinkedHashMap<>()).put(copy, depth);
+            }
+            return next;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Checks a scanned nesting level against the budget before anything from it is recorded
+     */
+    @Nullable
+    private DiscoveryBudgetExceededException checkBudget(List<T> sources, List<Scan<T>> scans, byte depth, long deadline) {
+        DiscoveryBudget budget = this.budget;
+        if (sources.isEmpty())
+            return null;
+
+        if (expired(deadline))
+            return timeout(sources.get(0), deadline);
+
+        long total = detections;
+        for (int x = 0; x < sources.size(); x++) {
+            Scan<T> scan = scans.get(x);
+            if (scan == null || scan.jars.isEmpty())
                 continue;
 
-            byte depth = (byte)(depths.getOrDefault(current, (byte)0) + 1);
-            if (depth < 1) // Just in case this rolls over. People are crazy
-                depth = Byte.MAX_VALUE;
+            if (scan.widest > budget.getMaxNested())
+                return new DiscoveryBudgetExceededException(DiscoveryBudgetExceededException.Limit.NESTED, budget.getMaxNested(), scan.widest, describe(sources.get(x)));
+            if (depth + scan.deepest > budget.getMaxDepth())
+                return new DiscoveryBudgetExceededException(DiscoveryBudgetExceededException.Limit.DEPTH, budget.getMaxDepth(), depth + scan.deepest, describe(sources.get(x)));
 
-            for (ContainedJarMetadata jar : metadata.jars()) {
-                T nested = jar.path() == null || jar.path().isEmpty() ? null : getNested(current, jar.path());
+            total += scan.jars.size();
+            if (total > budget.getMaxDetections())
+                return new DiscoveryBudgetExceededException(DiscoveryBudgetExceededException.Limit.DETECTIONS, budget.getMaxDetections(), total, describe(sources.get(x)));
+        }
+        return null;
+    }
 
-                DetectionResult<T> detection = new DetectionResult<>(jar, nested, depth);
-                this.detected.add(detection);
+    private static boolean expired(long deadline) {
+        return deadline != Long.MAX_VALUE && System.nanoTime() - deadline > 0;
+    }
+
+    /**
+     * Throws if the deadline has passed, checked before each read so a slow level doesn't have to finish first
+     */
+    private void checkDeadline(T source, long deadline) {
+        if (expired(deadline))
+            throw timeout(source, deadline);
+    }
+
+    private DiscoveryBudgetExceededException timeout(T source, long deadline) {
+        DiscoveryBudget budget = this.budget;
+        long timeout = budget.getTimeout() == null ? 0 : budget.getTimeout().toMillis();
+        long elapsed = timeout + (System.nanoTime() - deadline) / 1_000_000;
+        lock.lock();
+        try {
+            return new DiscoveryBudgetExceededException(DiscoveryBudgetExceededException.Limit.TIMEOUT, timeout, elapsed, describe(source));
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Describes where a source was found, as the identifier of the added source followed by the path of every nested jar leading to it
+     */
+    private String describe(T source) {
+        Deque<String> parts = new ArrayDeque<>();
+        Set<T> visited = new HashSet<>();
+        T current = source;
+        Origin<T> origin;
+        while (visited.add(current) && (origin = origins.get(current)) != null) {
+            parts.addFirst(origin.path);
+            current = origin.parent;
+        }
+        parts.addFirst(getIdentifier(current));
+        return String.join(" -> ", parts);
+    }
+
+    /**
+     * Records the detections of a source that wasn't read, because it has the same contents as one that was.
+     * The nested sources are shared with the original, only the depth and where peeked jars can be opened from differ.
+     */
+    private void copy(T copy, List<DetectionResult<T>> original, byte depth) {
+        List<DetectionResult<T>> detections = new ArrayList<>(original.size());
+        for (DetectionResult<T> detection : original) {
+            Origin<T> handle = detection.handle == null ? null : new Origin<>(copy, detection.handle.path);
+            DetectionResult<T> ret = new DetectionResult<>(detection.metadata, detection.source, handle, depth);
+            detections.add(ret);
+            detect(ret);
+        }
+        this.detections += detections.size();
+        this.scanned.put(copy, detections);
+    }
+
+    /**
+     * Records the results of scanning one nesting level, returning the next level
+     */
+    private List<T> merge(List<T> sources, List<Scan<T>> scans, byte depth) {
+        List<T> next = new ArrayList<>();
+        for (int x = 0; x < sources.size(); x++) {
+            T current = sources.get(x);
+            Scan<T> scan = scans.get(x);
+            if (scan == null) {
+                this.scanned.put(current, Collections.emptyList());
+                copyWaiting(current);
+                continue;
+            }
+
+            List<DetectionResult<T>> detections = new ArrayList<>(scan.jars.size());
+            for (int y = 0; y < scan.jars.size(); y++) {
+                ContainedJarMetadata jar = scan.jars.get(y);
+                T nested = scan.nested.get(y);
+                if (nested != null && !roots.contains(nested))
+                    this.opened.add(nested);
+
+                // Jars that were only peeked at, are claimed, or came from an index are recorded by where they are, and opened if they get selected
+                Origin<T> handle = scan.deferred.get(y) ? new Origin<>(current, scan.path(y)) : null;
+                DetectionResult<T> detection = new DetectionResult<>(jar, nested, handle, scan.depth(y, depth));
+                detections.add(detection);
+                detect(detection);
                 this.identifiers.add(jar.identifier());
 
                 if (nested != null) {
-                    queue.add(nested);
-                    depths.put(nested, depth);
+                    this.origins.putIfAbsent(nested, new Origin<>(current, jar.path()));
+                    next.add(nested);
                 }
             }
+            this.detections += detections.size();
+            this.scanned.put(current, detections);
+            copyWaiting(current);
         }
+        return next;
     }
 
-    public List<T> select() {
-        Map<ContainedJarMetadata, Collection<DetectionResult<T>>> detectedJarsBySource = new HashMap<>();
-        Map<ContainedJarIdentifier, Collection<ContainedJarMetadata>> metadataByIdentifier = new HashMap<>();
-        Map<ContainedJarIdentifier, Collection<ContainedJarMetadata>> extraRestrictions = new HashMap<>();
-
-        for (DetectionResult<T> detection : detected) {
-            detectedJarsBySource.computeIfAbsent(detection.metadata, k -> new HashSet<>()).add(detection);
-            Collection<ContainedJarMetadata> candidates = metadataByIdentifier.computeIfAbsent(detection.metadata.identifier(), k -> new HashSet<>());
-            if (detection.source() == null)
-                extraRestrictions.computeIfAbsent(detection.metadata.identifier(), k -> new HashSet<>()).add(detection.metadata);
-            else
-                candidates.add(detection.metadata);
+    private void copyWaiting(T original) {
+        Map<T, Byte> copies = waiting.remove(original);
+        if (copies != null)
+            copies.forEach((copy, depth) -> copy(copy, scanned.get(original), depth));
+    }
+
+    private List<Scan<T>> scan(List<T> sources, @Nullable Executor executor, int depth, long deadline) {
+        if (executor == null || sources.size() < 2) {
+            List<Scan<T>> ret = new ArrayList<>(sources.size());
+            try {
+                for (T source : sources)
+                    ret.add(scan(source, depth, deadline));
+            } catch (Throwable t) {
+                releaseUnmerged(ret);
+                return sneak(t);
+            }
+            return ret;
         }
 
-        Set<SelectionResult> options = new HashSet<>();
-        boolean failed = false;
+        // Once one scan fails the level is thrown away, so the ones that haven't started yet are cancelled instead
+        AtomicBoolean failed = new AtomicBoolean();
+        List<CompletableFuture<Scan<T>>> futures = new ArrayList<>(sources.size());
+        for (T source : sources) {
+            CompletableFuture<Scan<T>> future = new CompletableFuture<>();
+            futures.add(future);
+            executor.execute(() -> {
+                if (failed.get()) {
+                    future.cancel(false);
+                    return;
+                }
 
-        for (Entry<ContainedJarIdentifier, Collection<ContainedJarMetadata>> entry : metadataByIdentifier.entrySet()) {
-            ContainedJarIdentifier identifier = entry.getKey();
-            Collection<ContainedJarMetadata> jars = entry.getValue();
+                try {
+                    future.complete(scan(source, depth, deadline));
+                } catch (Throwable t) {
+                    failed.set(true);
+                    future.completeExceptionally(t);
+                }
+            });
+        }
 
-            //Find the most agreeable version:
-            VersionRange range = null;
-            for (ContainedJarMetadata jar : jars)
-                range = restrictRanges(range, jar.version().range());
-            for (ContainedJarMetadata jar : extraRestrictions.getOrDefault(identifier, Collections.emptyList()))
-                range = restrictRanges(range, jar.version().range());
+        // Wait for every scan even if one fails, so everything the others opened can be released
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, t) -> null).join();
+        return join(futures);
+    }
 
-            // No candidates, this is possible if a mod requests a dependency, but doesn't supply it
-            if (jars.isEmpty()) {
-                options.add(new SelectionResult(identifier, Optional.empty(), false));
-                failed = true;
-                continue;
+    /**
+     * Returns the results of finished scans. If any of them failed, releases everything the others opened and throws the first failure.
+     */
+    private List<Scan<T>> join(List<CompletableFuture<Scan<T>>> futures) {
+        List<Scan<T>> ret = new ArrayList<>(futures.size());
+        Throwable failure = null;
+        for (CompletableFuture<Scan<T>> future : futures) {
+            try {
+                ret.add(future.join());
+            } catch (CompletionException e) {
+                if (failure == null || failure instanceof CancellationException)
+                    failure = e.getCause() == null ? e : e.getCause();
+            } catch (CancellationException e) {
+                // Only cancelled because another scan failed, report that one instead
+                if (failure == null)
+                    failure = e;
             }
+        }
 
-            // No valid range found, we have to fail this
-            if (range == null || !isValid(range)) {
-                options.add(new SelectionResult(identifier, Optional.empty(), true));
-                failed = true;
-                continue;
-            }
+        if (failure != null) {
+            releaseUnmerged(ret);
+            return sneak(failure);
+        }
+        return ret;
+    }
 
-            // Only one choice, pick it
-            if (jars.size() == 1) {
-                ContainedJarMetadata jar = jars.iterator().next();
-                if (range.containsVersion(jar.version().artifactVersion()))
-                    options.add(new SelectionResult(identifier, Optional.of(jar), false));
-                else {
-                    options.add(new SelectionResult(identifier, Optional.empty(), false));
-                    failed = true;
+    /**
+     * Releases the nested sources opened by scans that will never be merged
+     */
+    private void releaseUnmerged(List<Scan<T>> scans) {
+        lock.lock();
+        try {
+            for (Scan<T> scan : scans) {
+                if (scan == null)
+                    continue;
+                for (T nested : scan.nested) {
+                    if (nested != null && !opened.contains(nested) && !roots.contains(nested))
+                        release0(nested);
                 }
-                continue;
             }
+        } finally {
+            lock.unlock();
+        }
+    }
 
-            //If we have a recommended version, use that
-            if (range.getRecommendedVersion() != null) {
-                ContainedJarMetadata found = null;
-                for (ContainedJarMetadata jar : jars) {
-                    if (jar.version().artifactVersion().equals(range.getRecommendedVersion())) {
-                        found = jar;
-                        break;
-                    }
-                }
+    /**
+     * Reads the metadata of a single source, and opens its nested sources. Does not touch any of the selector's state, other than what was peeked.
+     */
+    @Nullable
+    private Scan<T> scan(T current, int depth, long deadline) {
+        checkDeadline(current, deadline);
+        Metadata metadata = peeked(current);
+        if (metadata == null) {
+            boolean observed = listener != SelectionListener.NONE;
+            long start = 0;
+            if (observed) {
+                listener.readStarted(current, depth);
+                start = System.nanoTime();
+            }
 
-                if (found != null) {
-                    options.add(new SelectionResult(identifier, Optional.of(found), false));
-                    continue;
-                }
+            long[] bytes = observed ? new long[] { -1 } : null;
+            // Only added sources can have an index, everything nested in one was already in its index
+            MetadataIndex index = depth == 0 && metadataIndex ? readIndex(getResource(current, CONTAINED_JARS_INDEX_PATH), bytes) : null;
+            if (index == null && binaryMetadata)
+                metadata = read(getResource(current, CONTAINED_JARS_BINARY_METADATA_PATH), bytes);
+            if (index == null && metadata == null)
+                metadata = read(getResource(current, CONTAINED_JARS_METADATA_PATH), bytes);
+
+            if (observed)
+                listener.readFinished(current, depth, System.nanoTime() - start, bytes[0], index != null || metadata != null);
+            if (index != null)
+                return indexed(index);
+            metadataRead(current, metadata);
+        }
+
+        if (metadata == null)
+            return null;
+        // Don't open anything, merging this fails the budget check
+        if (metadata.jars().size() > budget.getMaxNested())
+            return new Scan<>(metadata.jars(), Collections.nCopies(metadata.jars().size(), null), new BitSet());
+
+        List<T> nested = new ArrayList<>(metadata.jars().size());
+        BitSet deferred = new BitSet();
+        Scan<T> ret = new Scan<>(metadata.jars(), nested, deferred);
+        try {
+            for (ContainedJarMetadata jar : metadata.jars()) {
+                Metadata leaf = null;
+                checkDeadline(current, deadline);
+                if (jar.path() == null || jar.path().isEmpty())
+                    nested.add(null);
+                else if (isShadowed(jar) || isLeaf(leaf = peek(current, jar.path()))) {
+                    deferred.set(nested.size());
+                    nested.add(null);
+                } else
+                    nested.add(opened(open(current, jar.path()), leaf));
             }
+        } catch (Throwable t) {
+            releaseUnmerged(Collections.singletonList(ret));
+            return sneak(t);
+        }
 
-            // Find the highest available version in the range
-            // Note the old version found the 'first' match. Which relied on implementation details of MultiHashMap, and can vary based on java versions.
-            // If someone relied on that, screw them.
-            ContainedJarMetadata found = null;
-            for (ContainedJarMetadata jar : jars) {
-                if (!range.containsVersion(jar.version().artifactVersion()))
-                    continue;
+        return ret;
+    }
 
-                if (found == null || jar.version().artifactVersion().compareTo(found.version().artifactVersion()) > 0)
-                    found = jar;
+    /**
+     * Returns true if the nested jar is claimed by a forced source, so it will never be selected.
+     * This is the only winner known while discovering, any jar still to be read can narrow the range of every other identifier.
+     */
+    private boolean isShadowed(ContainedJarMetadata jar) {
+        if (claimedIdentifiers.contains(jar.identifier()))
+            return true;
+        if (claimed.isEmpty())
+            return false;
+
+        String id = getNestedIdentifier(jar);
+        return id != null && claimed.containsKey(id);
+    }
+
+    /**
+     * Returns the metadata of a nested jar without opening it, {@link #NOT_PEEKED} if it can't be peeked at, or null if it has none
+     */
+    @Nullable
+    private Metadata peek(T source, String path) {
+        if (!canPeek(source))
+            return NOT_PEEKED;
+
+        Metadata metadata = binaryMetadata ? read(peekNested(source, path, CONTAINED_JARS_BINARY_METADATA_PATH)) : null;
+        if (metadata == null)
+            metadata = read(peekNested(source, path, CONTAINED_JARS_METADATA_PATH));
+        return metadata;
+    }
+
+    /**
+     * Asynchronous version of {@link #peek(Object, String)}, peeking with {@link #peekNestedAsync(Object, String, String)}
+     */
+    private CompletableFuture<Metadata> peekAsync(T source, String path) {
+        if (!canPeek(source))
+            return CompletableFuture.completedFuture(NOT_PEEKED);
+
+        CompletableFuture<InputStream> probe = binaryMetadata ? peekNestedAsync(source, path, CONTAINED_JARS_BINARY_METADATA_PATH) : CompletableFuture.completedFuture(null);
+        return probe.thenCompose(binary -> {
+            Metadata metadata = read(binary);
+            if (metadata != null)
+                return CompletableFuture.completedFuture(metadata);
+            return peekNestedAsync(source, path, CONTAINED_JARS_METADATA_PATH).thenApply(JarSelector::read);
+        });
+    }
+
+    /**
+     * Returns true if the peeked jar has no nested jars of its own, so it doesn't need to be opened to keep searching
+     */
+    private static boolean isLeaf(@Nullable Metadata peeked) {
+        return peeked != NOT_PEEKED && (peeked == null || peeked.jars().isEmpty());
+    }
+
+    /**
+     * Remembers the metadata peeked from a jar that was opened anyway, so scanning it doesn't read it again
+     */
+    @Nullable
+    private T opened(@Nullable T nested, @Nullable Metadata metadata) {
+        if (nested != null && metadata != null && metadata != NOT_PEEKED)
+            peeked.put(nested, metadata);
+        return nested;
+    }
+
+    /**
+     * Returns the metadata peeked from this source before it was opened, falling back to {@link #getCachedMetadata(Object)}
+     */
+    @Nullable
+    private Metadata peeked(T source) {
+        Metadata ret = peeked.remove(source);
+        if (ret == null)
+            return getCachedMetadata(source);
+
+        metadataRead(source, ret);
+        return ret;
+    }
+
+    private CompletableFuture<Scan<T>> scanAsync(T current, int depth, long deadline) {
+        Metadata cached = peeked(current);
+        if (cached != null)
+            return scanAsync(current, cached, deadline);
+
+        boolean observed = listener != SelectionListener.NONE;
+        long start = 0;
+        if (observed) {
+            listener.readStarted(current, depth);
+            start = System.nanoTime();
+        }
+
+        long started = start;
+        long[] bytes = observed ? new long[] { -1 } : null;
+        CompletableFuture<InputStream> probe = depth == 0 && metadataIndex ? unlessExpired(current, deadline, () -> getResourceAsync(current, CONTAINED_JARS_INDEX_PATH)) : CompletableFuture.completedFuture(null);
+        return probe.thenCompose(stream -> {
+            MetadataIndex index = readIndex(stream, bytes);
+            if (index != null) {
+                if (observed)
+                    listener.readFinished(current, depth, System.nanoTime() - started, bytes[0], true);
+                return CompletableFuture.completedFuture(indexed(index));
             }
 
-            if (found == null)
-                failed = true;
+            CompletableFuture<InputStream> binaries = binaryMetadata ? unlessExpired(current, deadline, () -> getResourceAsync(current, CONTAINED_JARS_BINARY_METADATA_PATH)) : CompletableFuture.completedFuture(null);
+            return binaries.thenCompose(binary -> {
+                Metadata metadata = read(binary, bytes);
+                if (metadata != null)
+                    return CompletableFuture.completedFuture(metadata);
+                return unlessExpired(current, deadline, () -> getResourceAsync(current, CONTAINED_JARS_METADATA_PATH)).thenApply(json -> read(json, bytes));
+            }).thenCompose(metadata -> {
+                if (observed)
+                    listener.readFinished(current, depth, System.nanoTime() - started, bytes[0], metadata != null);
+                metadataRead(current, metadata);
+                return scanAsync(current, metadata, deadline);
+            });
+        });
+    }
+
+    /**
+     * Every jar in the index, all of them deferred, so nothing is opened until it wins
+     */
+    @Nullable
+    private static <Z> Scan<Z> indexed(MetadataIndex index) {
+        Metadata root = index.get("");
+        if (root == null || root.jars() == null)
+            return null;
+
+        List<ContainedJarMetadata> jars = new ArrayList<>();
+        List<String> paths = new ArrayList<>();
+        ByteArrayOutputStream levels = new ByteArrayOutputStream();
+        int widest = 0;
+        int deepest = 0;
+
+        // Parents before children, so everything is in the order a walk would have found it
+        Deque<String> queue = new ArrayDeque<>();
+        Map<String, Integer> containers = new HashMap<>();
+        queue.add("");
+        containers.put("", 0);
+        while (!queue.isEmpty()) {
+            String container = queue.remove();
+            int level = containers.get(container);
+            Metadata metadata = index.get(container);
+            if (metadata == null || metadata.jars() == null)
+                continue;
 
-            options.add(new SelectionResult(identifier, Optional.ofNullable(found), false));
+            widest = Math.max(widest, metadata.jars().size());
+            deepest = Math.max(deepest, level);
+            for (ContainedJarMetadata jar : metadata.jars()) {
+                boolean located = jar.path() != null && !jar.path().isEmpty();
+                String path = located ? MetadataIndex.child(container, jar.path()) : null;
+                jars.add(jar);
+                paths.add(path);
+                levels.write(Math.min(level, Byte.MAX_VALUE));
+
+                if (located && level < Byte.MAX_VALUE && containers.putIfAbsent(path, level + 1) == null)
+                    queue.add(path);
+            }
         }
 
+        BitSet deferred = new BitSet();
+        for (int x = 0; x < paths.size(); x++) {
+            if (paths.get(x) != null)
+                deferred.set(x);
+        }
+        return new Scan<>(jars, Collections.nCopies(jars.size(), null), deferred, paths, levels.toByteArray(), widest, deepest);
+    }
 
-        if (failed) {
-            //We have entered into failure territory. Let's collect all of those that failed
-            List<ResolutionFailureInformation<T>> failures = new ArrayList<>();
-            for (SelectionResult result : options) {
-                if (result.selected().isPresent())
-                    continue;
+    private CompletableFuture<Scan<T>> scanAsync(T current, @Nullable Metadata metadata, long deadline) {
+        boolean observed = listener != SelectionListener.NONE;
+        if (metadata == null)
+            return CompletableFuture.completedFuture(null);
+        if (metadata.jars().size() > budget.getMaxNested())
+            return CompletableFuture.completedFuture(new Scan<>(metadata.jars(), Collections.nCopies(metadata.jars().size(), null), new BitSet()));
+
+        List<CompletableFuture<Boolean>> leaves = new ArrayList<>(metadata.jars().size());
+        List<CompletableFuture<T>> futures = new ArrayList<>(metadata.jars().size());
+        for (ContainedJarMetadata jar : metadata.jars()) {
+            if (jar.path() == null || jar.path().isEmpty()) {
+                leaves.add(CompletableFuture.completedFuture(false));
+                futures.add(CompletableFuture.completedFuture(null));
+                continue;
+            }
 
-                Set<SourceWithRequestedVersionRange<T>> sources = new HashSet<>();
-                for (ContainedJarMetadata jar : metadataByIdentifier.get(result.identifier())) {
-                    sources.add(new SourceWithRequestedVersionRange<T>(
-                        detectedJarsBySource.get(jar).stream().map(DetectionResult::source).filter(s -> s != null).collect(Collectors.toSet()),
-                        jar.version().range(),
-                        jar.version().artifactVersion()
-                    ));
-                }
+            CompletableFuture<Metadata> peek = isShadowed(jar) ? CompletableFuture.completedFuture(null) : peekAsync(current, jar.path());
+            leaves.add(peek.thenApply(JarSelector::isLeaf));
+            futures.add(peek.thenCompose(leaf -> {
+                if (isLeaf(leaf))
+                    return CompletableFuture.completedFuture(null);
+                if (!observed)
+                    return unlessExpired(current, deadline, () -> getNestedAsync(current, jar.path())).thenApply(nested -> opened(nested, leaf));
+
+                long opening = System.nanoTime();
+                return unlessExpired(current, deadline, () -> getNestedAsync(current, jar.path())).thenApply(nested -> {
+                    listener.nestedOpened(current, jar.path(), nested, System.nanoTime() - opening);
+                    return opened(nested, leaf);
+                });
+            }));
+        }
 
-                failures.add(new ResolutionFailureInformation<>(getFailureReason(result), result.identifier(), sources));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).handle((v, t) -> {
+            List<T> nested = new ArrayList<>(futures.size());
+            BitSet deferred = new BitSet();
+            for (int x = 0; x < futures.size(); x++) {
+                if (t == null && leaves.get(x).join())
+                    deferred.set(x);
+                nested.add(futures.get(x).isCompletedExceptionally() ? null : futures.get(x).join());
             }
 
-            LOGGER.error("Failed to select jars for {}", failures);
-            return sneak(getFailureException(failures));
+            Scan<T> scan = new Scan<>(metadata.jars(), nested, deferred);
+            if (t != null) {
+                releaseUnmerged(Collections.singletonList(scan));
+                return sneak(t instanceof CompletionException && t.getCause() != null ? t.getCause() : t);
+            }
+            return scan;
+        });
+    }
+
+    /**
+     * Asynchronous version of {@link #checkDeadline(Object, long)}, only starting the read if the deadline hasn't passed
+     */
+    private <R> CompletableFuture<R> unlessExpired(T source, long deadline, Supplier<CompletableFuture<R>> read) {
+        if (!expired(deadline))
+            return read.get();
+
+        CompletableFuture<R> ret = new CompletableFuture<>();
+        ret.completeExceptionally(timeout(source, deadline));
+        return ret;
+    }
+
+    /**
+     * Reads the stream, adding the number of bytes read to bytes[0], which stays -1 until a stream is found. Nothing is counted if bytes is null.
+     */
+    @Nullable
+    private static Metadata read(@Nullable InputStream stream, @Nullable long[] bytes) {
+        if (stream == null || bytes == null)
+            return read(stream);
+
+        CountingInputStream counted = new CountingInputStream(stream);
+        Metadata metadata = read(counted);
+        bytes[0] = Math.max(bytes[0], 0) + counted.count;
+        return metadata;
+    }
+
+    @Nullable
+    private static MetadataIndex readIndex(@Nullable InputStream stream, @Nullable long[] bytes) {
+        if (stream == null)
+            return null;
+
+        CountingInputStream counted = bytes == null ? null : new CountingInputStream(stream);
+        MetadataIndex index = null;
+        try (InputStream is = counted == null ? stream : counted) {
+            index = MetadataIOHandler.indexFromStream(is).orElse(null);
+        } catch (IOException e) {
+            LOGGER.error("Failed to parse metadata index", e);
+        }
+
+        if (counted != null)
+            bytes[0] = Math.max(bytes[0], 0) + counted.count;
+        return index;
+    }
+
+    @Nullable
+    private T open(T parent, String path) {
+        if (listener == SelectionListener.NONE)
+            return getNested(parent, path);
+
+        long start = System.nanoTime();
+        T ret = getNested(parent, path);
+        listener.nestedOpened(parent, path, ret, System.nanoTime() - start);
+        return ret;
+    }
+
+    @Nullable
+    private static Metadata read(@Nullable InputStream stream) {
+        if (stream == null)
+            return null;
+
+        Metadata metadata = null;
+        try (InputStream is = stream) {
+            metadata = MetadataIOHandler.fromStream(is).orElse(null);
+        } catch (IOException e) {
+            LOGGER.error("Failed to parse metadata", e);
+        }
+        return metadata;
+    }
+
+    /**
+     * Selects the jars to use from everything added so far.
+     * Sources being added on other threads at the same time are either fully included, or not at all for the ones still being read.
+     */
+    public List<T> select() {
+        lock.lock();
+        try {
+            return select0();
+        } finally {
+            lock.unlock();
         }
+    }
+
+    private List<T> select0() {
+        String fingerprint = null;
+        if (cache != null) {
+            fingerprint = fingerprint();
+            List<T> cached = fingerprint == null ? null : fromCache(fingerprint);
+            if (cached != null)
+                return cached;
+            flush();
+        }
+
+        List<T> selectedJars = selectDetected();
 
-        final List<T> selectedJars = new ArrayList<>(options.size());
-        for (SelectionResult result : options) {
-            ContainedJarMetadata meta = result.selected().orElse(null);
+        if (fingerprint != null)
+            toCache(fingerprint, selectedJars);
+
+        return selectedJars;
+    }
 
-            if (meta == null)
+    private List<T> selectDetected() {
+        SelectionEngine<DetectionResult<T>> engine = new SelectionEngine<>(dirty.size());
+        for (ContainedJarIdentifier identifier : dirty) {
+            Set<DetectionResult<T>> detections = detected.get(identifier);
+            if (detections == null || detections.isEmpty()) {
+                results.remove(identifier);
                 continue;
+            }
+
+            engine.begin(identifier);
+            for (DetectionResult<T> detection : detections)
+                engine.add(detection.metadata, detection, detection.supplies(), detection.depth);
+        }
+        dirty.clear();
+
+        engine.resolve();
+        for (int x = 0; x < engine.size(); x++) {
+            results.put(engine.identifier(x), new SelectionResult<>(engine.identifier(x), Optional.ofNullable(engine.selected(x)), engine.noValidRange(x), engine.winner(x)));
+            if (listener != SelectionListener.NONE)
+                listener.resolved(engine.identifier(x), engine.range(x), engine.selected(x));
+        }
+
+        List<ResolutionFailureInformation<T>> failures = new ArrayList<>();
+        for (SelectionResult<T> result : results.values()) {
+            if (!result.selected().isPresent())
+                failures.add(getFailureInformation(result));
+        }
 
-            Collection<DetectionResult<T>> sourceOfJar = detectedJarsBySource.get(meta);
-            if (sourceOfJar == null || sourceOfJar.isEmpty())
+        if (!failures.isEmpty()) {
+            LOGGER.error("Failed to select jars for {}", failures);
+            return sneak(getFailureException(failures));
+        }
+
+        final List<T> selectedJars = new ArrayList<>(results.size());
+        for (SelectionResult<T> result : results.values()) {
+            DetectionResult<T> nearest = result.winner;
+            if (nearest != null && nearest.source == null && nearest.handle != null && isShadowed(nearest.metadata)) {
+                // Claimed by a forced source, so it would be dropped below anyway. No need to open it.
+                LOGGER.debug("Skipping {} as it is claimed by a forced jar", nearest.handle);
                 continue;
+            }
 
-            // Lets pick the least nested source, should make extracting files faster
-            DetectionResult<T> nearest = null;
-            for (DetectionResult<T> info : sourceOfJar) {
-                if (nearest == null || nearest.depth > info.depth)
-                    nearest = info;
+            // This is the least nested source, should make extracting files faster
+            T winner = nearest == null ? null : materialize(nearest);
+            if (winner != null && released.contains(winner)) {
+                T reopened = reopen(winner);
+                if (reopened == null)
+                    LOGGER.error("Failed to open released jar {} again", winner);
+                winner = reopened;
             }
 
-            T winner = nearest == null ? null : nearest.source;
-            if (winner != null)
+            if (winner != null) {
                 selectedJars.add(winner);
+                if (listener != SelectionListener.NONE)
+                    listener.selected(result.identifier(), nearest.metadata, winner);
+            }
         }
 
 
@@ -355,6 +1316,8 @@ public abstract class JarSelector<T> {
                 if (old != jar) // Its possible people used `option()` to add a forced jar with better version info. Only warn if that isn't the case
                     LOGGER.warn("Attempted to select a dependency jar for JarJar which was passed in as source: {}. Using {}", id, old);
                 itr.remove();
+                if (listener != SelectionListener.NONE)
+                    listener.dropped(jar, id, old);
                 continue;
             }
 
@@ -362,34 +1325,278 @@ public abstract class JarSelector<T> {
             if (old != null) {
                 LOGGER.warn("Attempted to select two dependency jars from JarJar which have the same identification {}: {} and {}. Using the former", id, old, jar);
                 itr.remove();
+                if (listener != SelectionListener.NONE)
+                    listener.dropped(jar, id, old);
+            }
+        }
+
+        // Anything we opened that didn't win is no longer needed, the winners now belong to the caller.
+        // The jars containing a winner are kept open, as the winner may need them.
+        Set<T> winners = new HashSet<>(selectedJars);
+        Set<T> containers = new HashSet<>();
+        for (T winner : winners) {
+            for (Origin<T> origin = origins.get(winner); origin != null && containers.add(origin.parent); )
+                origin = origins.get(origin.parent);
+        }
+
+        for (Iterator<T> itr = opened.iterator(); itr.hasNext(); ) {
+            T source = itr.next();
+            if (containers.contains(source) && !winners.contains(source))
+                continue;
+
+            itr.remove();
+            if (!winners.contains(source) && !claimed.containsValue(source)) {
+                release0(source);
+                released.add(source);
             }
         }
 
         return selectedJars;
     }
 
-    @SuppressWarnings("unchecked")
-    private static <R, E extends Throwable> R sneak(Throwable t) throws E {
-        throw (E) t;
+    /**
+     * Releases every nested source still held by this selector, and forgets all sources, options and requirements.
+     * The selector can be reused afterwards as if it was new.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            clear0();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void clear0() {
+        for (T source : opened) {
+            if (!claimed.containsValue(source))
+                release0(source);
+        }
+
+        opened.clear();
+        released.clear();
+        origins.clear();
+        materialized.clear();
+        peeked.clear();
+        seen.clear();
+        contents.clear();
+        copies.clear();
+        waiting.clear();
+        detections = 0;
+        detected.clear();
+        claimed.clear();
+        claimedIdentifiers.clear();
+        identifiers.clear();
+        roots.clear();
+        scanned.clear();
+        options.clear();
+        requirements.clear();
+        results.clear();
+        dirty.clear();
+        deferred.clear();
+        deferredExecutor = null;
+    }
+
+    /**
+     * Hashes everything that was given to the selector and the settings that change what discovery finds, or returns null if a source has no fingerprint
+     */
+    @Nullable
+    private String fingerprint() {
+        List<String> lines = new ArrayList<>();
+        for (T source : roots) {
+            String fingerprint = getFingerprint(source);
+            if (fingerprint == null)
+                return null;
+            lines.add((claimed.containsValue(source) ? "force\t" : "add\t") + fingerprint);
+        }
+
+        for (Entry<T, List<DetectionResult<T>>> entry : options.entrySet()) {
+            String fingerprint = getFingerprint(entry.getKey());
+            if (fingerprint == null)
+                return null;
+            for (DetectionResult<T> detection : entry.getValue())
+                lines.add("option\t" + fingerprint + '\t' + detection.metadata);
+        }
+
+        for (ContainedJarMetadata meta : requirements)
+            lines.add("require\t" + meta);
+
+        // A budget can cut discovery short, and the metadata copies read can differ from each other
+        lines.add("settings\t" + budget + '\t' + binaryMetadata + '\t' + metadataIndex);
+
+        // The order things were added in doesn't change the result
+        Collections.sort(lines);
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String line : lines) {
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte)'\n');
+            }
+            return String.format("%064x", new BigInteger(1, digest.digest()));
+        } catch (NoSuchAlgorithmException e) {
+            return sneak(e);
+        }
+    }
+
+    /**
+     * Opens the winners stored in the cache, returning null if there are none or any of them can't be found anymore
+     */
+    @Nullable
+    private List<T> fromCache(String fingerprint) {
+        List<String> entries;
+        try {
+            entries = cache.get(fingerprint);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read resolution cache", e);
+            return null;
+        }
+
+        if (entries == null)
+            return null;
+
+        Map<String, T> sources = new HashMap<>();
+        for (T source : roots)
+            sources.put(getFingerprint(source), source);
+        for (T source : options.keySet())
+            sources.put(getFingerprint(source), source);
+
+        // Everything we open is keyed by its location, so a jar containing multiple winners is only opened once
+        Map<String, T> located = new LinkedHashMap<>();
+        List<T> ret = new ArrayList<>(entries.size());
+        for (String entry : entries) {
+            String[] parts = entry.split("\t", -1);
+            T current = sources.get(parts[0]);
+            StringBuilder location = new StringBuilder(parts[0]);
+            for (int x = 1; x < parts.length && current != null; x++) {
+                T parent = current;
+                String path = parts[x];
+                location.append('\t').append(path);
+                current = located.computeIfAbsent(location.toString(), k -> open(parent, path));
+            }
+
+            if (current == null) {
+                LOGGER.debug("Cached jar {} could not be found, resolving again", entry);
+                for (T source : located.values())
+                    release0(source);
+                return null;
+            }
+            ret.add(current);
+        }
+
+        // The jars holding the winners are ours, the winners belong to the caller
+        Set<T> winners = new HashSet<>(ret);
+        for (T source : located.values()) {
+            if (!winners.contains(source))
+                opened.add(source);
+        }
+
+        return ret;
+    }
+
+    private void toCache(String fingerprint, List<T> selectedJars) {
+        List<String> entries = new ArrayList<>(selectedJars.size());
+        for (T winner : selectedJars) {
+            Deque<String> parts = new ArrayDeque<>();
+            T current = winner;
+            for (Origin<T> origin = origins.get(current); origin != null; origin = origins.get(current)) {
+                parts.addFirst(origin.path);
+                current = origin.parent;
+            }
+
+            String root = getFingerprint(current);
+            if (root == null)
+                return;
+            parts.addFirst(root);
+            entries.add(String.join("\t", parts));
+        }
+
+        try {
+            cache.put(fingerprint, entries);
+        } catch (IOException e) {
+            LOGGER.error("Failed to write resolution cache", e);
+        }
     }
 
-    private static VersionRange restrictRanges(final VersionRange versionRange, final VersionRange versionRange2) {
-        if (versionRange == null) {
-            return versionRange2;
+    private ResolutionFailureInformation<T> getFailureInformation(SelectionResult<T> result) {
+        Map<ContainedJarMetadata, Set<T>> sourcesByJar = new HashMap<>();
+        for (DetectionResult<T> detection : detected.get(result.identifier())) {
+            T source = detection.supplies() ? materialize(detection) : null;
+            if (source != null)
+                sourcesByJar.computeIfAbsent(detection.metadata, k -> new HashSet<>()).add(source);
+        }
+
+        Set<SourceWithRequestedVersionRange<T>> sources = new HashSet<>();
+        for (Entry<ContainedJarMetadata, Set<T>> entry : sourcesByJar.entrySet()) {
+            ContainedJarMetadata jar = entry.getKey();
+            sources.add(new SourceWithRequestedVersionRange<T>(entry.getValue(), jar.version().range(), jar.version().artifactVersion()));
+        }
+
+        return new ResolutionFailureInformation<>(getFailureReason(result), result.identifier(), sources);
+    }
+
+    /**
+     * Returns the source of a detection, opening it if it was only peeked at
+     */
+    @Nullable
+    private T materialize(DetectionResult<T> detection) {
+        if (detection.source != null || detection.handle == null)
+            return detection.source;
+
+        // Jars found through an index are opened one level at a time, so every jar in between is tracked like any other nested source
+        T parent = detection.handle.parent;
+        for (String path : detection.handle.path.split(MetadataIndex.SEPARATOR)) {
+            Origin<T> handle = new Origin<>(parent, path);
+            T ret = materialized.get(handle);
+            if (ret == null) {
+                if (released.contains(parent))
+                    parent = reopen(parent);
+                ret = parent == null ? null : open(parent, path);
+                if (ret == null)
+                    return null;
+
+                materialized.put(handle, ret);
+                origins.putIfAbsent(ret, handle);
+                opened.add(ret);
+            }
+            parent = ret;
         }
+        return parent;
+    }
 
-        if (versionRange2 == null) {
-            return versionRange;
+    /**
+     * Opens a released source again from its parent, opening the parent again as well if needed.
+     */
+    @Nullable
+    private T reopen(T source) {
+        Origin<T> origin = origins.get(source);
+        if (origin == null)
+            return null;
+
+        T parent = released.contains(origin.parent) ? reopen(origin.parent) : origin.parent;
+        T ret = parent == null ? null : open(parent, origin.path);
+        if (ret != null) {
+            released.remove(source);
+            opened.add(ret);
         }
+        return ret;
+    }
 
-        return versionRange.restrict(versionRange2);
+    private void release0(T source) {
+        peeked.remove(source);
+        try {
+            release(source);
+        } catch (Exception e) {
+            LOGGER.error("Failed to release {}", source, e);
+        }
     }
 
-    private static boolean isValid(final VersionRange range) {
-        return range.getRecommendedVersion() == null && range.hasRestrictions();
+    @SuppressWarnings("unchecked")
+    private static <R, E extends Throwable> R sneak(Throwable t) throws E {
+        throw (E) t;
     }
 
-    private static FailureReason getFailureReason(SelectionResult selectionResult) {
+    private static FailureReason getFailureReason(SelectionResult<?> selectionResult) {
         if (selectionResult.selected().isPresent())
             throw new IllegalArgumentException("Resolution succeeded, not failure possible");
 
@@ -402,11 +1609,17 @@ public abstract class JarSelector<T> {
     private static final class DetectionResult<Z> {
         private final ContainedJarMetadata metadata;
         private final Z source;
+        @Nullable private final Origin<Z> handle;
         private final byte depth;
 
         private DetectionResult(ContainedJarMetadata metadata, Z source, byte depth) {
+            this(metadata, source, null, depth);
+        }
+
+        private DetectionResult(ContainedJarMetadata metadata, Z source, @Nullable Origin<Z> handle, byte depth) {
             this.metadata = metadata;
             this.source = source;
+            this.handle = handle;
             this.depth = depth;
         }
 
@@ -414,6 +1627,11 @@ public abstract class JarSelector<T> {
             return source;
         }
 
+        /** Returns true if this detection provides a jar, instead of only restricting the version */
+        private boolean supplies() {
+            return source != null || handle != null;
+        }
+
         @SuppressWarnings("rawtypes")
         @Override
         public boolean equals(Object obj) {
@@ -422,33 +1640,129 @@ public abstract class JarSelector<T> {
             final DetectionResult that = (DetectionResult) obj;
             return Objects.equals(this.metadata, that.metadata) &&
                     Objects.equals(this.source, that.source) &&
+                    Objects.equals(this.handle, that.handle) &&
                     this.depth == that.depth;
         }
 
         @Override
         public int hashCode() {
-            return Objects.hash(metadata, source, depth);
+            return Objects.hash(metadata, source, handle, depth);
         }
 
         @Override
         public String toString() {
             return "DetectionResult[" +
                     "metadata=" + metadata + ", " +
-                    "source=" + source + ", " +
+                    "source=" + (source == null && handle != null ? handle : source) + ", " +
                     "depth=" + depth + ']';
         }
     }
 
+    private static final class CountingInputStream extends FilterInputStream {
+        private long count;
+
+        private CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int ret = super.read();
+            if (ret != -1)
+                count++;
+            return ret;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int ret = super.read(b, off, len);
+            if (ret > 0)
+                count += ret;
+            return ret;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long ret = super.skip(n);
+            count += ret;
+            return ret;
+        }
+    }
+
+    private static final class Origin<Z> {
+        private final Z parent;
+        private final String path;
+
+        private Origin(Z parent, String path) {
+            this.parent = parent;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Origin)) return false;
+            final Origin<?> that = (Origin<?>) obj;
+            return this.parent.equals(that.parent) && this.path.equals(that.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * parent.hashCode() + path.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return parent + "!/" + path;
+        }
+    }
+
+    private static final class Scan<Z> {
+        private final List<ContainedJarMetadata> jars;
+        private final List<Z> nested;
+        private final BitSet deferred;
+        // Where each jar is from the scanned source, and how many levels below its direct children. Null if every jar is a direct child.
+        @Nullable private final List<String> paths;
+        @Nullable private final byte[] levels;
+        // The most jars in a single container, and the deepest container
+        private final int widest;
+        private final int deepest;
+
+        private Scan(List<ContainedJarMetadata> jars, List<Z> nested, BitSet deferred) {
+            this(jars, nested, deferred, null, null, jars.size(), 0);
+        }
+
+        private Scan(List<ContainedJarMetadata> jars, List<Z> nested, BitSet deferred, @Nullable List<String> paths, @Nullable byte[] levels, int widest, int deepest) {
+            this.jars = jars;
+            this.nested = nested;
+            this.deferred = deferred;
+            this.paths = paths;
+            this.levels = levels;
+            this.widest = widest;
+            this.deepest = deepest;
+        }
+
+        private String path(int index) {
+            return paths == null ? jars.get(index).path() : paths.get(index);
+        }
+
+        private byte depth(int index, byte depth) {
+            return levels == null ? depth : (byte)Math.min(depth + levels[index], Byte.MAX_VALUE);
+        }
+    }
+
     @SuppressWarnings("OptionalUsedAsFieldOrParameterType")
-    private static final class SelectionResult {
+    private static final class SelectionResult<Z> {
         private final ContainedJarIdentifier identifier;
         private final Optional<ContainedJarMetadata> selected;
         private final boolean noValidRangeFound;
+        @Nullable private final DetectionResult<Z> winner;
 
-        private SelectionResult(ContainedJarIdentifier identifier, Optional<ContainedJarMetadata> selected, final boolean noValidRangeFound) {
+        private SelectionResult(ContainedJarIdentifier identifier, Optional<ContainedJarMetadata> selected, final boolean noValidRangeFound, @Nullable DetectionResult<Z> winner) {
             this.identifier = identifier;
             this.selected = selected;
             this.noValidRangeFound = noValidRangeFound;
+            this.winner = winner;
         }
 
         public ContainedJarIdentifier identifier() {
@@ -467,7 +1781,7 @@ public abstract class JarSelector<T> {
         public boolean equals(Object obj) {
             if (obj == this) return true;
             if (obj == null || obj.getClass() != this.getClass()) return false;
-            final SelectionResult that = (SelectionResult) obj;
+            final SelectionResult<?> that = (SelectionResult<?>) obj;
             return Objects.equals(this.identifier, that.identifier) &&
                     Objects.equals(this.selected, that.selected);
         }
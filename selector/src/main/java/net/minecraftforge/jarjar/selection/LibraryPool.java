@@ -0,0 +1,306 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
+import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
+import net.minecraftforge.jarjar.metadata.ContainedVersion;
+import net.minecraftforge.jarjar.metadata.MetadataInterner;
+import net.minecraftforge.jarjar.metadata.VersionCache;
+import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * The jars in a directory of shared libraries, with the Maven coordinates of each, to give to a {@link JarSelector} as options.
+ * <p>
+ * Coordinates are read from the {@code Maven-Artifact} manifest attribute, or the jar's only {@code pom.properties}.
+ * They are kept in an index file along with the size and modification time of every jar, so a jar is only opened again once it changes.
+ */
+public final class LibraryPool {
+    private static final Logger LOGGER = LoggerFactory.getLogger(LibraryPool.class);
+    private static final String HEADER = "jarjar-library-pool\t1";
+    private static final String MAVEN_ARTIFACT = "Maven-Artifact";
+
+    private final List<Library> libraries;
+
+    private LibraryPool(List<Library> libraries) {
+        this.libraries = libraries;
+    }
+
+    /**
+     * Scans every jar in the directory and its subdirectories.
+     *
+     * @param index File to keep the coordinates of every jar in between runs, or null to always read every jar
+     * @param executor Executor to read changed jars on in parallel, or null to read them on the calling thread
+     */
+    public static LibraryPool scan(Path directory, @Nullable Path index, @Nullable Executor executor) throws IOException {
+        Map<String, Entry> known = index == null ? Collections.emptyMap() : readIndex(index);
+
+        List<Path> jars;
+        try (Stream<Path> files = Files.walk(directory)) {
+            jars = files.filter(file -> file.getFileName().toString().endsWith(".jar") && Files.isRegularFile(file)).sorted().collect(Collectors.toList());
+        }
+
+        List<Entry> entries = new ArrayList<>(jars.size());
+        List<CompletableFuture<Entry>> futures = new ArrayList<>();
+        boolean changed = known.size() != jars.size();
+        for (Path jar : jars) {
+            String name = directory.relativize(jar).toString().replace('\\', '/');
+            BasicFileAttributes attributes = Files.readAttributes(jar, BasicFileAttributes.class);
+            long size = attributes.size();
+            long modified = attributes.lastModifiedTime().toMillis();
+
+            Entry existing = known.get(name);
+            if (existing != null && existing.size == size && existing.modified == modified) {
+                entries.add(existing);
+                continue;
+            }
+
+            changed = true;
+            if (executor == null)
+                entries.add(read(jar, name, size, modified));
+            else {
+                futures.add(CompletableFuture.supplyAsync(() -> read(jar, name, size, modified), executor));
+                entries.add(null);
+            }
+        }
+
+        for (int x = 0, y = 0; x < entries.size(); x++) {
+            if (entries.get(x) == null)
+                entries.set(x, futures.get(y++).join());
+        }
+
+        if (index != null && changed)
+            writeIndex(index, entries);
+
+        List<Library> libraries = new ArrayList<>(entries.size());
+        for (Entry entry : entries) {
+            if (entry.group == null)
+                continue;
+
+            try {
+                libraries.add(new Library(directory.resolve(entry.name), entry.group, entry.artifact, entry.version));
+            } catch (InvalidVersionSpecificationException e) {
+                LOGGER.warn("Ignoring library {} with invalid version {}", entry.name, entry.version);
+            }
+        }
+        return new LibraryPool(Collections.unmodifiableList(libraries));
+    }
+
+    /**
+     * Every jar in the pool that has Maven coordinates
+     */
+    public List<Library> getLibraries() {
+        return libraries;
+    }
+
+    /**
+     * Gives every library to the selector as an option. Options are always selected if nothing else supplies their identifier,
+     * so this is only useful if everything in the pool should be loaded.
+     */
+    public void registerAll(JarSelector<Path> selector) {
+        for (Library library : libraries)
+            selector.option(library.path, library.metadata);
+    }
+
+    /**
+     * Gives the libraries whose identifier was requested by something already added to the selector as options.
+     * Call this after adding every source.
+     */
+    public void registerRequired(JarSelector<Path> selector) {
+        for (Library library : libraries) {
+            if (selector.isRequired(library.metadata.identifier()))
+                selector.option(library.path, library.metadata);
+        }
+    }
+
+    private static Entry read(Path jar, String name, long size, long modified) {
+        try (JarFile file = new JarFile(jar.toFile(), false)) {
+            Manifest manifest = file.getManifest();
+            String artifact = manifest == null ? null : manifest.getMainAttributes().getValue(MAVEN_ARTIFACT);
+            if (artifact != null) {
+                String[] parts = artifact.trim().split(":");
+                if (parts.length == 3)
+                    return new Entry(name, size, modified, parts[0], parts[1], parts[2]);
+            }
+
+            JarEntry pom = null;
+            for (Enumeration<JarEntry> itr = file.entries(); itr.hasMoreElements(); ) {
+                JarEntry entry = itr.nextElement();
+                if (!entry.getName().startsWith("META-INF/maven/") || !entry.getName().endsWith("/pom.properties"))
+                    continue;
+
+                // Shaded jars have one for everything inside them, we can't tell which is the jar itself
+                if (pom != null)
+                    return new Entry(name, size, modified, null, null, null);
+                pom = entry;
+            }
+
+            if (pom != null) {
+                Properties properties = new Properties();
+                try (InputStream is = file.getInputStream(pom)) {
+                    properties.load(is);
+                }
+
+                String group = properties.getProperty("groupId");
+                String artifactId = properties.getProperty("artifactId");
+                String version = properties.getProperty("version");
+                if (group != null && artifactId != null && version != null)
+                    return new Entry(name, size, modified, group, artifactId, version);
+            }
+
+            return new Entry(name, size, modified, null, null, null);
+        } catch (IOException e) {
+            LOGGER.error("Failed to read library {}", jar, e);
+            return new Entry(name, size, modified, null, null, null);
+        }
+    }
+
+    private static Map<String, Entry> readIndex(Path index) {
+        if (!Files.exists(index))
+            return Collections.emptyMap();
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            LOGGER.warn("Failed to read library index {}", index, e);
+            return Collections.emptyMap();
+        }
+
+        if (lines.isEmpty() || !lines.get(0).equals(HEADER))
+            return Collections.emptyMap();
+
+        Map<String, Entry> ret = new HashMap<>();
+        for (int x = 1; x < lines.size(); x++) {
+            String[] parts = lines.get(x).split("\t", -1);
+            try {
+                if (parts.length == 3)
+                    ret.put(parts[0], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), null, null, null));
+                else if (parts.length == 6)
+                    ret.put(parts[0], new Entry(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]), parts[3], parts[4], parts[5]));
+                else
+                    return Collections.emptyMap();
+            } catch (NumberFormatException e) {
+                return Collections.emptyMap();
+            }
+        }
+        return ret;
+    }
+
+    private static void writeIndex(Path index, List<Entry> entries) throws IOException {
+        List<String> lines = new ArrayList<>(entries.size() + 1);
+        lines.add(HEADER);
+        for (Entry entry : entries) {
+            String line = entry.name + '\t' + entry.size + '\t' + entry.modified;
+            if (entry.group != null)
+                line += '\t' + entry.group + '\t' + entry.artifact + '\t' + entry.version;
+            lines.add(line);
+        }
+
+        Path parent = index.toAbsolutePath().getParent();
+        if (parent != null)
+            Files.createDirectories(parent);
+
+        // Write to a temp file first, so a crash never leaves a partial index behind
+        Path tmp = index.resolveSibling(index.getFileName() + ".tmp");
+        Files.write(tmp, lines, StandardCharsets.UTF_8);
+        try {
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, index, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    public static final class Library {
+        private final Path path;
+        private final ContainedJarMetadata metadata;
+
+        private Library(Path path, String group, String artifact, String version) throws InvalidVersionSpecificationException {
+            this.path = path;
+            // Accepts any version, a range starting at this version would be intersected with the other pooled versions and reject anyone pinning an older one
+            this.metadata = MetadataInterner.shared().jar(
+                new ContainedJarIdentifier(group, artifact),
+                new ContainedVersion(VersionCache.shared().range("(,)"), VersionCache.shared().version(version)),
+                path.getFileName().toString(),
+                false
+            );
+        }
+
+        public Path path() {
+            return path;
+        }
+
+        /**
+         * The metadata given to {@link JarSelector#option(Object, ContainedJarMetadata)}, which accepts any version
+         */
+        public ContainedJarMetadata metadata() {
+            return metadata;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (obj == this) return true;
+            if (!(obj instanceof Library)) return false;
+            final Library that = (Library) obj;
+            return this.path.equals(that.path) && this.metadata.equals(that.metadata);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, metadata);
+        }
+
+        @Override
+        public String toString() {
+            return "Library[path=" + path + ", metadata=" + metadata + ']';
+        }
+    }
+
+    /** A line of the index, group, artifact and version are null for jars without coordinates */
+    private static final class Entry {
+        private final String name;
+        private final long size;
+        private final long modified;
+        @Nullable private final String group;
+        @Nullable private final String artifact;
+        @Nullable private final String version;
+
+        private Entry(String name, long size, long modified, @Nullable String group, @Nullable String artifact, @Nullable String version) {
+            this.name = name;
+            this.size = size;
+            this.modified = modified;
+            this.group = group;
+            this.artifact = artifact;
+            this.version = version;
+        }
+    }
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
+import net.minecraftforge.jarjar.metadata.Metadata;
+import net.minecraftforge.jarjar.nio.layzip.LayeredZipFileSystemProvider;
+import net.minecraftforge.jarjar.nio.zip.NestedZipReader;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link JarSelector} for jars and directories on disk, nested jars are opened with the jar-in-jar file system.
+ * <p>
+ * Metadata is read straight from the jar file on disk with {@link NestedZipReader}, however deep the jar is nested,
+ * so a file system is only opened for a jar once a path inside it is needed. Central directories and inflated jars
+ * are kept until the jar is released, so each is only read once per discovery. Parsed metadata is cached by fingerprint,
+ * and the cache can be shared between selectors.
+ * <p>
+ * Call {@link #close()} once the paths returned by {@link #select()} are no longer needed.
+ */
+public class PathJarSelector extends JarSelector<Path> implements Closeable {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PathJarSelector.class);
+    // Stands in for sources without metadata in the cache
+    private static final Metadata EMPTY = new Metadata(Collections.emptyList());
+
+    private final Map<String, Metadata> metadata;
+    private final FileSystemProvider provider = provider();
+    // File systems opened to get paths inside a jar, by that jar
+    private final Map<Path, FileSystem> fileSystems = new ConcurrentHashMap<>();
+    // Every nested path we created, as the jar on disk and the entries leading to it
+    private final Map<Path, Location> locations = new ConcurrentHashMap<>();
+    // Size and modification time of the jars on disk
+    private final Map<Path, String> archives = new ConcurrentHashMap<>();
+    // Central directories and inflated nested jars, kept until their source is released
+    private final NestedZipReader.Cache reader = new NestedZipReader.Cache();
+
+    public PathJarSelector() {
+        this(new ConcurrentHashMap<>());
+    }
+
+    /**
+     * @param metadata Parsed metadata by {@link #getFingerprint(Path)}, can be shared between selectors. Must be thread safe if sources are added in parallel.
+     */
+    public PathJarSelector(Map<String, Metadata> metadata) {
+        this.metadata = metadata;
+    }
+
+    @Override
+    @Nullable
+    protected InputStream getResource(Path source, String path) {
+        try {
+            Location location = location(source);
+            if (location != null)
+                return stream(reader.read(location.archive, location.with(path)));
+
+            Path file = Files.isDirectory(source) ? source.resolve(path) : root(source).resolve(path);
+            return Files.isRegularFile(file) ? Files.newInputStream(file) : null;
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Failed to read {} from {}", path, source, e);
+            return null;
+        }
+    }
+
+    @Override
+    @Nullable
+    protected Path getNested(Path source, String path) {
+        if (Files.isDirectory(source))
+            return source.resolve(path);
+
+        Path nested;
+        try {
+            nested = root(source).resolve(path);
+        } catch (UncheckedIOException e) {
+            LOGGER.error("Failed to open {}", source, e);
+            return null;
+        }
+
+        Location parent = location(source);
+        if (parent != null)
+            locations.put(nested, new Location(parent.archive, parent.with(path)));
+        return nested;
+    }
+
+    /**
+     * The file name of the jar, or directory
+     */
+    @Override
+    protected String getIdentifier(Path source) {
+        Path name = source.getFileName();
+        return name == null ? source.toString() : name.toString();
+    }
+
+    @Override
+    @Nullable
+    protected String getNestedIdentifier(ContainedJarMetadata jar) {
+        String path = jar.path();
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    protected Throwable getFailureException(Collection<ResolutionFailureInformation<Path>> failures) {
+        StringBuilder message = new StringBuilder("Failed to select jar-in-jar dependencies:");
+        for (ResolutionFailureInformation<Path> failure : failures) {
+            message.append("\n\t").append(failure.identifier().group()).append(':').append(failure.identifier().artifact())
+                   .append(": ").append(failure.failureReason());
+            for (SourceWithRequestedVersionRange<Path> source : failure.sources())
+                message.append("\n\t\t").append(source.requestedVersionRange()).append(" requested by ").append(source.sources());
+        }
+        return new IllegalStateException(message.toString());
+    }
+
+    @Override
+    protected boolean canPeek(Path source) {
+        return location(source) != null;
+    }
+
+    @Override
+    @Nullable
+    protected InputStream peekNested(Path source, String nested, String path) {
+        Location location = location(source);
+        if (location == null)
+            return null;
+
+        try {
+            return stream(reader.read(location.archive, location.with(nested, path)));
+        } catch (IOException e) {
+            LOGGER.error("Failed to read {} from {} in {}", path, nested, source, e);
+            return null;
+        }
+    }
+
+    /**
+     * The size and modification time of the jar on disk, followed by the entries leading to the source.
+     * Directories, paths that were not created by this selector and jars whose attributes can't be read have no fingerprint.
+     */
+    @Override
+    @Nullable
+    protected String getFingerprint(Path source) {
+        Location location = location(source);
+        if (location == null)
+            return null;
+
+        String archive = archives.computeIfAbsent(location.archive, file -> {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return file.toAbsolutePath() + "\t" + attributes.size() + "\t" + attributes.lastModifiedTime().toMillis();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to fingerprint {}, it won't be cached", file, e);
+                return null;
+            }
+        });
+
+        if (archive == null)
+            return null;
+        if (location.entries.length == 0)
+            return archive;
+        return archive + "\t" + String.join("\t", location.entries);
+    }
+
+    @Override
+    @Nullable
+    protected Metadata getCachedMetadata(Path source) {
+        String fingerprint = getFingerprint(source);
+        return fingerprint == null ? null : metadata.get(fingerprint);
+    }
+
+    @Override
+    protected void metadataRead(Path source, @Nullable Metadata metadata) {
+        String fingerprint = getFingerprint(source);
+        if (fingerprint != null)
+            this.metadata.put(fingerprint, metadata == null ? EMPTY : metadata);
+    }
+
+    @Override
+    protected void release(Path source) {
+        FileSystem fileSystem = fileSystems.remove(source);
+        if (fileSystem != null)
+            close(fileSystem);
+
+        Location location = locations.get(source);
+        if (location != null)
+            reader.release(location.archive, location.entries);
+    }
+
+    @Override
+    public void clear() {
+        super.clear();
+        archives.clear();
+        reader.clear();
+    }
+
+    /**
+     * Releases everything, including the file systems that paths returned by {@link #select()} belong to.
+     */
+    @Override
+    public void close() {
+        clear();
+        List<FileSystem> remaining = new ArrayList<>(fileSystems.values());
+        fileSystems.clear();
+        locations.clear();
+        for (FileSystem fileSystem : remaining)
+            close(fileSystem);
+    }
+
+    /**
+     * Where to read a source from, if it's a jar on disk or a jar nested in one
+     */
+    @Nullable
+    private Location location(Path source) {
+        Location location = locations.get(source);
+        if (location == null && source.getFileSystem() == FileSystems.getDefault() && Files.isRegularFile(source))
+            location = new Location(source, new String[0]);
+        return location;
+    }
+
+    private Path root(Path jar) {
+        FileSystem fileSystem = fileSystems.computeIfAbsent(jar, key -> {
+            Map<String, Object> env = new HashMap<>();
+            env.put("packagePath", key);
+            try {
+                return provider.newFileSystem(URI.create(LayeredZipFileSystemProvider.SCHEME + ':' + key.toAbsolutePath().toUri().getRawSchemeSpecificPart()), env);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return fileSystem.getPath("/");
+    }
+
+    private static void close(FileSystem fileSystem) {
+        try {
+            fileSystem.close();
+        } catch (IOException | UncheckedIOException e) {
+            LOGGER.error("Failed to close {}", fileSystem, e);
+        }
+    }
+
+    @Nullable
+    private static InputStream stream(@Nullable byte[] data) {
+        return data == null ? null : new ByteArrayInputStream(data);
+    }
+
+    /**
+     * The installed jar-in-jar provider, so URIs of the paths we create can be resolved by anyone
+     */
+    private static FileSystemProvider provider() {
+        for (FileSystemProvider provider : FileSystemProvider.installedProviders()) {
+            if (LayeredZipFileSystemProvider.SCHEME.equals(provider.getScheme()))
+                return provider;
+        }
+        return new LayeredZipFileSystemProvider();
+    }
+
+    private static final class Location {
+        private final Path archive;
+        private final String[] entries;
+
+        private Location(Path archive, String[] entries) {
+            this.archive = archive;
+            this.entries = entries;
+        }
+
+        private String[] with(String... names) {
+            String[] ret = Arrays.copyOf(entries, entries.length + names.length);
+            System.arraycopy(names, 0, ret, entries.length, names.length);
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Stores the result of {@link JarSelector#select()} between runs, keyed by a fingerprint of everything that was given to the selector.
+ * Winners are stored as opaque strings describing how to find them from the sources given to the selector.
+ */
+public interface ResolutionCache {
+    /**
+     * Returns the winners stored for the fingerprint, or null if there is nothing stored for it
+     */
+    @Nullable
+    List<String> get(String fingerprint) throws IOException;
+
+    void put(String fingerprint, List<String> winners) throws IOException;
+
+    /**
+     * A cache that keeps the last resolution in a single file
+     */
+    static ResolutionCache file(Path path) {
+        return new FileResolutionCache(path);
+    }
+}
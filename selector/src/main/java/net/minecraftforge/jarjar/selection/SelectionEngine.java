@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
+import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
+import net.minecraftforge.jarjar.metadata.VersionKey;
+import net.minecraftforge.jarjar.metadata.VersionKeyRange;
+import org.apache.maven.artifact.versioning.ArtifactVersion;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+
+/**
+ * Resolves the version to use for many identifiers at once.
+ * <p>
+ * Identifiers get dense ids in the order they are started, and every detection is stored in flat arrays grouped by identifier.
+ * Equal metadata within an identifier share a candidate id, so each range is only restricted once per candidate, and no metadata is ever hashed.
+ * The selected candidate and its least nested detection are found in a single pass over the identifier's detections.
+ * Candidate versions are checked against the resolved range with {@link VersionKey}s, so plain numeric versions are compared as longs.
+ */
+final class SelectionEngine<D> {
+    private ContainedJarIdentifier[] identifiers;
+    private int[] starts;
+    private int identifierCount;
+
+    private ContainedJarMetadata[] metadata;
+    private Object[] detections;
+    private boolean[] supplies;
+    private byte[] depths;
+    private int size;
+
+    // Results, by identifier id
+    private ContainedJarMetadata[] selected;
+    private VersionRange[] ranges;
+    private boolean[] noValidRange;
+    private Object[] winners;
+
+    SelectionEngine(int identifiers) {
+        this.identifiers = new ContainedJarIdentifier[Math.max(identifiers, 1)];
+        this.starts = new int[this.identifiers.length + 1];
+        this.metadata = new ContainedJarMetadata[this.identifiers.length * 2];
+        this.detections = new Object[this.metadata.length];
+        this.supplies = new boolean[this.metadata.length];
+        this.depths = new byte[this.metadata.length];
+    }
+
+    /**
+     * Starts a new identifier, every detection added until the next call belongs to it
+     */
+    void begin(ContainedJarIdentifier identifier) {
+        if (identifierCount == identifiers.length) {
+            identifiers = Arrays.copyOf(identifiers, identifierCount * 2);
+            starts = Arrays.copyOf(starts, identifiers.length + 1);
+        }
+        identifiers[identifierCount] = identifier;
+        starts[identifierCount++] = size;
+        starts[identifierCount] = size;
+    }
+
+    /**
+     * Adds a detection to the current identifier, a detection that doesn't supply a jar only restricts the range
+     */
+    void add(ContainedJarMetadata meta, D detection, boolean supplies, byte depth) {
+        if (size == metadata.length) {
+            metadata = Arrays.copyOf(metadata, size * 2);
+            detections = Arrays.copyOf(detections, size * 2);
+            this.supplies = Arrays.copyOf(this.supplies, size * 2);
+            depths = Arrays.copyOf(depths, size * 2);
+        }
+        metadata[size] = meta;
+        detections[size] = detection;
+        this.supplies[size] = supplies;
+        depths[size++] = depth;
+        starts[identifierCount] = size;
+    }
+
+    int size() {
+        return identifierCount;
+    }
+
+    ContainedJarIdentifier identifier(int id) {
+        return identifiers[id];
+    }
+
+    @Nullable
+    ContainedJarMetadata selected(int id) {
+        return selected[id];
+    }
+
+    /**
+     * The intersection of every range requested for the identifier, null if they don't intersect or there were no candidates
+     */
+    @Nullable
+    VersionRange range(int id) {
+        return ranges[id];
+    }
+
+    boolean noValidRange(int id) {
+        return noValidRange[id];
+    }
+
+    /**
+     * The least nested detection of the selected metadata, null if nothing was selected
+     */
+    @SuppressWarnings("unchecked")
+    @Nullable
+    D winner(int id) {
+        return (D)winners[id];
+    }
+
+    void resolve() {
+        selected = new ContainedJarMetadata[identifierCount];
+        ranges = new VersionRange[identifierCount];
+        noValidRange = new boolean[identifierCount];
+        winners = new Object[identifierCount];
+
+        // Scratch space, indexed by candidate id
+        int max = 0;
+        for (int x = 0; x < identifierCount; x++)
+            max = Math.max(max, starts[x + 1] - starts[x]);
+        int[] distinct = new int[max];
+        boolean[] supplied = new boolean[max];
+        boolean[] restricts = new boolean[max];
+        int[] nearest = new int[max];
+        // Open addressing table of candidate id + 1 by metadata hash, at most half full
+        int[] table = new int[tableSize(max)];
+
+        for (int x = 0; x < identifierCount; x++)
+            resolve(x, distinct, supplied, restricts, nearest, table);
+    }
+
+    private static int tableSize(int candidates) {
+        return Math.max(2, Integer.highestOneBit(Math.max(1, candidates) * 2 - 1) * 2);
+    }
+
+    // Spreads the high bits down, as only the low bits pick the slot
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private void resolve(int id, int[] distinct, boolean[] supplied, boolean[] restricts, int[] nearest, int[] table) {
+        final int from = starts[id];
+        final int to = starts[id + 1];
+        final int mask = tableSize(to - from) - 1;
+        Arrays.fill(table, 0, mask + 1, 0);
+
+        // Give equal metadata the same candidate id, and find the least nested detection of each
+        int count = 0;
+        for (int x = from; x < to; x++) {
+            ContainedJarMetadata meta = metadata[x];
+            int found = -1;
+            int slot = mix(meta.hashCode()) & mask;
+            for (; table[slot] != 0; slot = (slot + 1) & mask) {
+                ContainedJarMetadata other = metadata[distinct[table[slot] - 1]];
+                if (other == meta || other.equals(meta)) {
+                    found = table[slot] - 1;
+                    break;
+                }
+            }
+
+            if (found == -1) {
+                found = count++;
+                table[slot] = count;
+                distinct[found] = x;
+                supplied[found] = false;
+                restricts[found] = false;
+                nearest[found] = x;
+            } else if (depths[nearest[found]] > depths[x]) {
+                nearest[found] = x;
+            }
+
+            if (supplies[x])
+                supplied[found] = true;
+            else
+                restricts[found] = true;
+        }
+
+        //Find the most agreeable version:
+        VersionRange range = null;
+        int jars = 0;
+        int last = -1;
+        for (int x = 0; x < count; x++) {
+            if (supplied[x]) {
+                range = restrictRanges(range, metadata[distinct[x]].version().range());
+                jars++;
+                last = x;
+            }
+        }
+        for (int x = 0; x < count; x++) {
+            if (restricts[x])
+                range = restrictRanges(range, metadata[distinct[x]].version().range());
+        }
+
+        // No candidates, this is possible if a mod requests a dependency, but doesn't supply it
+        if (jars == 0)
+            return;
+
+        // No valid range found, we have to fail this
+        if (range == null || !isValid(range)) {
+            noValidRange[id] = true;
+            return;
+        }
+        ranges[id] = range;
+
+        VersionKeyRange keys = VersionKeyRange.of(range);
+        int found = -1;
+        if (jars == 1) {
+            // Only one choice, pick it
+            if (keys.contains(metadata[distinct[last]].version().artifactVersionKey()))
+                found = last;
+        } else {
+            //If we have a recommended version, use that
+            ArtifactVersion recommended = range.getRecommendedVersion();
+            if (recommended != null) {
+                for (int x = 0; x < count && found == -1; x++) {
+                    if (supplied[x] && metadata[distinct[x]].version().artifactVersion().equals(recommended))
+                        found = x;
+                }
+            }
+
+            // Find the highest available version in the range
+            if (found == -1) {
+                for (int x = 0; x < count; x++) {
+                    if (!supplied[x])
+                        continue;
+
+                    VersionKey version = metadata[distinct[x]].version().artifactVersionKey();
+                    if (!keys.contains(version))
+                        continue;
+
+                    if (found == -1 || version.compareTo(metadata[distinct[found]].version().artifactVersionKey()) > 0)
+                        found = x;
+                }
+            }
+        }
+
+        if (found != -1) {
+            selected[id] = metadata[distinct[found]];
+            winners[id] = detections[nearest[found]];
+        }
+    }
+
+    static VersionRange restrictRanges(final VersionRange versionRange, final VersionRange versionRange2) {
+        if (versionRange == null) {
+            return versionRange2;
+        }
+
+        if (versionRange2 == null) {
+            return versionRange;
+        }
+
+        return versionRange.restrict(versionRange2);
+    }
+
+    static boolean isValid(final VersionRange range) {
+        return range.getRecommendedVersion() == null && range.hasRestrictions();
+    }
+}
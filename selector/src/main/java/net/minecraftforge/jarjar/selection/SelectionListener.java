@@ -0,0 +1,52 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
+import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Receives events from a {@link JarSelector}, every method does nothing by default.
+ * <p>
+ * Discovery events can be called from multiple threads at once when sources are added with an executor or asynchronously.
+ * Depth is the nesting level of the source, sources passed to the selector are depth 0.
+ */
+public interface SelectionListener<T> {
+    /** Listener that ignores everything, the selector skips all event work when this is used */
+    SelectionListener<?> NONE = new SelectionListener<Object>() { };
+
+    @SuppressWarnings("unchecked")
+    static <T> SelectionListener<T> none() {
+        return (SelectionListener<T>)NONE;
+    }
+
+    /** Called before the jar-in-jar metadata of a source is read */
+    default void readStarted(T source, int depth) { }
+
+    /**
+     * Called after the jar-in-jar metadata of a source was read and parsed
+     * @param bytes The number of bytes read, or -1 if the source has no metadata
+     * @param found If metadata was found and parsed successfully
+     */
+    default void readFinished(T source, int depth, long nanos, long bytes, boolean found) { }
+
+    /** Called after a nested source was opened, nested is null if it could not be opened */
+    default void nestedOpened(T parent, String path, @Nullable T nested, long nanos) { }
+
+    /**
+     * Called when an identifier is resolved
+     * @param range The intersection of every range requested for the identifier, null if they don't intersect
+     * @param selected The chosen version, null if nothing could be chosen
+     */
+    default void resolved(ContainedJarIdentifier identifier, @Nullable VersionRange range, @Nullable ContainedJarMetadata selected) { }
+
+    /** Called when a source is chosen as the winner for an identifier */
+    default void selected(ContainedJarIdentifier identifier, ContainedJarMetadata metadata, T winner) { }
+
+    /** Called when a winner is dropped because another source has the same identification, such as a forced source */
+    default void dropped(T source, String identification, T kept) { }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selection;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener that collects how long reading metadata and opening nested sources took, by nesting depth and by source.
+ * Safe to use with parallel and asynchronous discovery.
+ */
+public final class SelectionTimings<T> implements SelectionListener<T> {
+    private static final int DEPTHS = Byte.MAX_VALUE + 1;
+
+    private final AtomicLongArray reads = new AtomicLongArray(DEPTHS);
+    private final AtomicLongArray readNanos = new AtomicLongArray(DEPTHS);
+    private final AtomicLongArray readBytes = new AtomicLongArray(DEPTHS);
+    private final Map<T, Long> sources = new ConcurrentHashMap<>();
+    private final LongAdder opened = new LongAdder();
+    private final LongAdder openNanos = new LongAdder();
+
+    @Override
+    public void readFinished(T source, int depth, long nanos, long bytes, boolean found) {
+        final int index = Math.min(depth, DEPTHS - 1);
+        reads.incrementAndGet(index);
+        readNanos.addAndGet(index, nanos);
+        if (bytes > 0)
+            readBytes.addAndGet(index, bytes);
+        sources.merge(source, nanos, Long::sum);
+    }
+
+    @Override
+    public void nestedOpened(T parent, String path, @Nullable T nested, long nanos) {
+        opened.increment();
+        openNanos.add(nanos);
+        sources.merge(parent, nanos, Long::sum);
+    }
+
+    /** The deepest nesting level any metadata was read from, -1 if nothing was read */
+    public int getMaxDepth() {
+        for (int x = DEPTHS - 1; x >= 0; x--) {
+            if (reads.get(x) != 0)
+                return x;
+        }
+        return -1;
+    }
+
+    public long getReads(int depth) {
+        return reads.get(depth);
+    }
+
+    public long getReadNanos(int depth) {
+        return readNanos.get(depth);
+    }
+
+    public long getReadBytes(int depth) {
+        return readBytes.get(depth);
+    }
+
+    public long getOpened() {
+        return opened.sum();
+    }
+
+    public long getOpenNanos() {
+        return openNanos.sum();
+    }
+
+    /**
+     * Time spent per source, reading its metadata and opening the sources nested in it
+     */
+    public Map<T, Long> getSourceNanos() {
+        return Collections.unmodifiableMap(new HashMap<>(sources));
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder buf = new StringBuilder("SelectionTimings[");
+        for (int x = 0; x <= getMaxDepth(); x++) {
+            buf.append("depth ").append(x).append(": ")
+               .append(reads.get(x)).append(" reads, ")
+               .append(readBytes.get(x)).append(" bytes, ")
+               .append(TimeUnit.NANOSECONDS.toMillis(readNanos.get(x))).append("ms; ");
+        }
+        buf.append("opened ").append(getOpened()).append(" nested in ").append(TimeUnit.NANOSECONDS.toMillis(getOpenNanos())).append("ms]");
+        return buf.toString();
+    }
+}
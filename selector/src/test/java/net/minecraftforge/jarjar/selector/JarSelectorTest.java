@@ -5,7 +5,12 @@
 package net.minecraftforge.jarjar.selector;
 
 import net.minecraftforge.jarjar.metadata.*;
+import net.minecraftforge.jarjar.selection.DiscoveryBudget;
+import net.minecraftforge.jarjar.selection.DiscoveryBudgetExceededException;
 import net.minecraftforge.jarjar.selection.JarSelector;
+import net.minecraftforge.jarjar.selection.ResolutionCache;
+import net.minecraftforge.jarjar.selection.SelectionListener;
+import net.minecraftforge.jarjar.selection.SelectionTimings;
 import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
 import org.apache.maven.artifact.versioning.InvalidVersionSpecificationException;
 import org.apache.maven.artifact.versioning.VersionRange;
@@ -14,12 +19,22 @@ import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -185,6 +200,494 @@ public class JarSelectorTest {
         assertEquals(v2, selectedSources.get(0));
     }
 
+    @Test
+    public void releasesLosingCandidates() throws InvalidVersionSpecificationException {
+        SelectionSource older = new SelectionSource("test.one");
+        SelectionSource newer = new SelectionSource("test.one");
+        SelectionSource outer = createSource("outer_newer", createArtifact("[1.0.0,)", "1.0.1"), newer);
+
+        CountingSelector selector = new CountingSelector();
+        selector.add(createSource("outer_older", createArtifact("[1.0.0,)", "1.0.0"), older));
+        selector.add(outer);
+
+        List<SelectionSource> selectedSources = selector.select();
+
+        assertEquals(Collections.singletonList(newer), selectedSources);
+        assertEquals(Collections.singletonList(older), selector.released);
+
+        selector.clear();
+        assertEquals(Collections.singletonList(older), selector.released, "Selected sources belong to the caller and should not be released");
+        assertFalse(selector.isRequired(id("test.one")));
+    }
+
+    @Test
+    public void clearReleasesNestedSources() throws InvalidVersionSpecificationException {
+        SelectionSource inner = new SelectionSource("test.one");
+        SelectionSource outer = createSource("outer", createArtifact("[1.0.0,)", "1.0.0"), inner);
+
+        CountingSelector selector = new CountingSelector();
+        selector.add(outer);
+        selector.clear();
+
+        assertEquals(Collections.singletonList(inner), selector.released);
+        assertEquals(0, selector.select().size());
+    }
+
+    @Test
+    public void parallelDiscoveryMatchesSequential() throws Exception {
+        final List<SelectionSource> sources = new ArrayList<>();
+        for (int x = 0; x < 32; x++) {
+            SelectionSource inner = createSource("inner_" + x, createArtifact("test.nested" + (x % 4), "[1.0.0,)", "1.0." + x), "test.nested" + (x % 4));
+            sources.add(createSource("outer_" + x, createArtifact("inner_" + x, "[1.0.0,)", "1.0.0"), inner));
+        }
+
+        JarSelector<SelectionSource> sequential = new Selector();
+        sequential.add(sources);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            JarSelector<SelectionSource> parallel = new Selector();
+            parallel.add(sources, executor);
+
+            List<SelectionSource> expected = sequential.select();
+            assertEquals(36, expected.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(parallel.select()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void failedParallelScanReleasesOthers() throws Exception {
+        final List<SelectionSource> sources = new ArrayList<>();
+        final List<SelectionSource> inners = new ArrayList<>();
+        for (int x = 0; x < 8; x++) {
+            SelectionSource inner = new SelectionSource("test.nested" + x);
+            inners.add(inner);
+            sources.add(createSource("outer_" + x, createArtifact("test.nested" + x, "[1.0.0,)", "1.0.0"), inner));
+        }
+        SelectionSource broken = new SelectionSource("broken");
+        sources.add(3, broken);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            CountingSelector selector = new CountingSelector() {
+                @Override
+                protected InputStream getResource(SelectionSource source, String path) {
+                    if (source == broken)
+                        throw new IllegalStateException("Broken");
+                    return super.getResource(source, path);
+                }
+            };
+
+            IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> selector.add(sources, executor));
+            assertEquals("Broken", thrown.getMessage());
+            // Scans that hadn't started when the broken one failed are skipped
+            assertTrue(inners.containsAll(selector.opened));
+            assertEquals(new HashSet<>(selector.opened), new HashSet<>(selector.released), "Everything the other scans opened should be released");
+            assertEquals(0, selector.select().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void asyncDiscoveryMatchesSequential() throws Exception {
+        final List<SelectionSource> sources = new ArrayList<>();
+        for (int x = 0; x < 8; x++) {
+            SelectionSource inner = createSource("inner_" + x, createArtifact("test.nested", "[1.0.0,)", "1.0." + x), "test.nested");
+            sources.add(createSource("outer_" + x, createArtifact("inner_" + x, "[1.0.0,)", "1.0.0"), inner));
+        }
+
+        JarSelector<SelectionSource> sequential = new Selector();
+        sequential.add(sources);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            JarSelector<SelectionSource> async = new Selector() {
+                @Override
+                protected CompletableFuture<InputStream> getResourceAsync(SelectionSource source, String path) {
+                    return CompletableFuture.supplyAsync(() -> getResource(source, path), executor);
+                }
+
+                @Override
+                protected CompletableFuture<SelectionSource> getNestedAsync(SelectionSource source, String path) {
+                    return CompletableFuture.supplyAsync(() -> getNested(source, path), executor);
+                }
+            };
+            async.addAsync(sources).get(10, TimeUnit.SECONDS);
+
+            List<SelectionSource> expected = sequential.select();
+            assertEquals(9, expected.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(async.select()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void identicalContentsAreOnlyReadOnce() throws InvalidVersionSpecificationException {
+        final List<SelectionSource> sources = new ArrayList<>();
+        for (int x = 0; x < 4; x++) {
+            SelectionSource lib = createSource("lib", createArtifact("test.deep", "[1.0.0,)", "1.0.0"), "test.deep");
+            sources.add(createSource("outer_" + x, createArtifact("lib", "[1.0.0,)", "1.0.0"), lib));
+        }
+
+        CountingSelector selector = new CountingSelector() {
+            @Override
+            protected Object getContentIdentity(SelectionSource source) {
+                return source.getName();
+            }
+        };
+        selector.add(sources);
+
+        List<SelectionSource> selected = selector.select();
+        assertEquals(2, selected.size());
+        assertEquals(1, selector.read.stream().filter(source -> source.getName().equals("lib")).count());
+        assertEquals(1, selector.read.stream().filter(source -> source.getName().equals("test.deep")).count());
+        assertEquals(new HashSet<>(process(sources)).size(), new HashSet<>(selected).size());
+    }
+
+    @Test
+    public void discoveryStopsAtBudget() throws InvalidVersionSpecificationException {
+        SelectionSource deepest = createSource("level_3", createArtifact("test.level4", "[1.0.0,)", "1.0.0"), "test.level4");
+        SelectionSource middle = createSource("level_2", createArtifact("level_3", "[1.0.0,)", "1.0.0"), deepest);
+        SelectionSource inner = createSource("level_1", createArtifact("level_2", "[1.0.0,)", "1.0.0"), middle);
+        SelectionSource outer = createSource("outer", createArtifact("level_1", "[1.0.0,)", "1.0.0"), inner);
+
+        JarSelector<SelectionSource> deep = new Selector();
+        deep.setDiscoveryBudget(DiscoveryBudget.unlimited().withMaxDepth(3));
+        DiscoveryBudgetExceededException depth = assertThrows(DiscoveryBudgetExceededException.class, () -> deep.add(outer));
+        assertEquals(DiscoveryBudgetExceededException.Limit.DEPTH, depth.getLimit());
+        assertEquals("outer -> level_1 -> level_2 -> level_3", depth.getLocation());
+
+        SelectionSource wide = source("wide",
+            createArtifact("test.one", "[1.0.0,)", "1.0.0"),
+            createArtifact("test.two", "[1.0.0,)", "1.0.0"),
+            createArtifact("test.three", "[1.0.0,)", "1.0.0")
+        );
+        JarSelector<SelectionSource> fanOut = new Selector();
+        fanOut.setDiscoveryBudget(DiscoveryBudget.unlimited().withMaxNested(2));
+        DiscoveryBudgetExceededException nested = assertThrows(DiscoveryBudgetExceededException.class, () -> fanOut.add(wide));
+        assertEquals(DiscoveryBudgetExceededException.Limit.NESTED, nested.getLimit());
+        assertEquals(3, nested.getActual());
+
+        JarSelector<SelectionSource> total = new Selector();
+        total.setDiscoveryBudget(DiscoveryBudget.unlimited().withMaxDetections(4));
+        total.add(outer);
+        assertThrows(DiscoveryBudgetExceededException.class, () -> total.add(wide));
+
+        JarSelector<SelectionSource> enough = new Selector();
+        enough.setDiscoveryBudget(DiscoveryBudget.unlimited().withMaxDepth(4).withMaxNested(1).withMaxDetections(4));
+        enough.add(outer);
+        assertEquals(4, enough.select().size());
+    }
+
+    @Test
+    public void discoveryStopsAtDeadlineWithinLevel() throws Exception {
+        final List<SelectionSource> sources = new ArrayList<>();
+        for (int x = 0; x < 32; x++)
+            sources.add(createSource("outer_" + x, createArtifact("test.nested" + x, "[1.0.0,)", "1.0.0"), "test.nested" + x));
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountingSelector selector = new CountingSelector() {
+                @Override
+                protected InputStream getResource(SelectionSource source, String path) {
+                    if (JarSelector.CONTAINED_JARS_METADATA_PATH.equals(path)) {
+                        try {
+                            Thread.sleep(20);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return super.getResource(source, path);
+                }
+            };
+            selector.setDiscoveryBudget(DiscoveryBudget.unlimited().withTimeout(Duration.ofMillis(50)));
+
+            DiscoveryBudgetExceededException timeout = assertThrows(DiscoveryBudgetExceededException.class, () -> selector.add(sources, executor));
+            assertEquals(DiscoveryBudgetExceededException.Limit.TIMEOUT, timeout.getLimit());
+            Set<SelectionSource> read = new HashSet<>(selector.read);
+            assertTrue(read.size() < sources.size(), "Sources after the deadline should not be read, read " + read.size());
+            assertEquals(0, selector.select().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentAddMatchesSequential() throws Exception {
+        final List<SelectionSource> sources = new ArrayList<>();
+        for (int x = 0; x < 64; x++) {
+            SelectionSource inner = createSource("inner_" + x, createArtifact("test.nested" + (x % 8), "[1.0.0,)", "1.0." + x), "test.nested" + (x % 8));
+            sources.add(createSource("outer_" + x, createArtifact("inner_" + x, "[1.0.0,)", "1.0.0"), inner));
+        }
+
+        JarSelector<SelectionSource> sequential = new Selector();
+        sequential.add(sources);
+
+        JarSelector<SelectionSource> shared = new Selector();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<CompletableFuture<Void>> futures = new ArrayList<>();
+            for (SelectionSource source : sources)
+                futures.add(CompletableFuture.runAsync(() -> shared.add(source), executor));
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+
+            List<SelectionSource> expected = sequential.select();
+            assertEquals(72, expected.size());
+            assertEquals(new HashSet<>(expected), new HashSet<>(shared.select()));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void removeReselectsWithoutRescanning() throws InvalidVersionSpecificationException {
+        SelectionSource older = new SelectionSource("test.one");
+        SelectionSource newer = new SelectionSource("test.one");
+        SelectionSource outerOlder = createSource("outer_older", createArtifact("[1.0.0,)", "1.0.0"), older);
+        SelectionSource outerNewer = createSource("outer_newer", createArtifact("[1.0.0,)", "1.0.1"), newer);
+
+        CountingSelector selector = new CountingSelector();
+        selector.add(outerOlder);
+        selector.add(outerNewer);
+
+        assertEquals(Collections.singletonList(newer), selector.select());
+        assertEquals(Collections.singletonList(older), selector.released);
+        int reads = selector.read.size();
+
+        selector.remove(outerNewer);
+        assertEquals(Collections.singletonList(older), selector.select(), "Released jar should be opened again when it is needed");
+        assertEquals(reads, selector.read.size(), "Removing a source should not read anything again");
+
+        selector.remove(outerOlder);
+        assertEquals(0, selector.select().size());
+        assertFalse(selector.isRequired(id("test.one")));
+    }
+
+    @Test
+    public void removeOptionRestoresFailure() {
+        SelectionSource dep = source("dep");
+
+        JarSelector<SelectionSource> selector = new Selector();
+        selector.add(source("wrapper", range("dep", "[2.0,)")));
+        selector.option(dep, version("dep", "2.0"));
+        assertEquals(Collections.singletonList(dep), selector.select());
+
+        selector.remove(dep);
+        assertThrows(IllegalStateException.class, () -> selector.select());
+    }
+
+    @Test
+    public void cachedResolutionSkipsDiscovery() throws Exception {
+        SelectionSource older = new SelectionSource("test.one");
+        SelectionSource newer = new SelectionSource("test.one");
+        SelectionSource outerOlder = createSource("outer_older", createArtifact("[1.0.0,)", "1.0.0"), older);
+        SelectionSource outerNewer = createSource("outer_newer", createArtifact("[1.0.0,)", "1.0.1"), newer);
+
+        Path file = Files.createTempFile("jarjar", ".cache");
+        try {
+            Files.delete(file);
+            List<SelectionSource> read = new ArrayList<>();
+
+            JarSelector<SelectionSource> first = new CachingSelector(file, read);
+            first.add(Arrays.asList(outerOlder, outerNewer));
+            assertEquals(Collections.singletonList(newer), first.select());
+            assertFalse(read.isEmpty());
+            assertTrue(Files.exists(file));
+
+            read.clear();
+            JarSelector<SelectionSource> second = new CachingSelector(file, read);
+            second.add(Arrays.asList(outerNewer, outerOlder));
+            assertEquals(Collections.singletonList(newer), second.select());
+            assertTrue(read.isEmpty(), "Cache hit should not read any metadata");
+
+            JarSelector<SelectionSource> changed = new CachingSelector(file, read);
+            changed.add(outerOlder);
+            assertEquals(Collections.singletonList(older), changed.select());
+            assertFalse(read.isEmpty());
+
+            // Settings that change what discovery finds are part of the key
+            List<Consumer<JarSelector<SelectionSource>>> settings = Arrays.asList(
+                selector -> selector.setDiscoveryBudget(DiscoveryBudget.unlimited().withMaxDepth(4)),
+                selector -> selector.setBinaryMetadata(true),
+                selector -> selector.setMetadataIndex(true)
+            );
+            for (Consumer<JarSelector<SelectionSource>> setting : settings) {
+                JarSelector<SelectionSource> cached = new CachingSelector(file, read);
+                cached.add(Arrays.asList(outerOlder, outerNewer));
+                assertEquals(Collections.singletonList(newer), cached.select());
+
+                read.clear();
+                JarSelector<SelectionSource> configured = new CachingSelector(file, read);
+                setting.accept(configured);
+                configured.add(Arrays.asList(outerOlder, outerNewer));
+                assertEquals(Collections.singletonList(newer), configured.select());
+                assertFalse(read.isEmpty(), "Different settings should not hit the cache");
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void selectsLeastNestedCopyOfWinner() throws InvalidVersionSpecificationException {
+        SelectionSource shallow = new SelectionSource("test.one");
+        SelectionSource deep = new SelectionSource("test.one");
+        SelectionSource middle = createSource("middle", createArtifact("[1.0.0,)", "1.0.1"), deep);
+
+        JarSelector<SelectionSource> selector = new Selector();
+        selector.add(createSource("outer_deep", createArtifact("middle", "[1.0.0,)", "1.0.0"), middle));
+        selector.add(createSource("outer_shallow", createArtifact("[1.0.0,)", "1.0.1"), shallow));
+        for (int x = 0; x < 16; x++)
+            selector.add(createSource("outer_old_" + x, createArtifact("[1.0.0,)", "1.0.0"), "test.one"));
+
+        List<SelectionSource> selectedSources = selector.select();
+
+        assertEquals(2, selectedSources.size());
+        assertTrue(selectedSources.contains(shallow));
+        assertFalse(selectedSources.contains(deep));
+    }
+
+    @Test
+    public void manyDuplicateCandidatesResolveToOne() throws InvalidVersionSpecificationException {
+        final List<SelectionSource> sources = new ArrayList<>();
+        SelectionSource newest = null;
+        for (int x = 0; x < 256; x++) {
+            SelectionSource inner = new SelectionSource("test.one");
+            if (x == 200)
+                newest = inner;
+            sources.add(createSource("outer_" + x, createArtifact("[1.0.0,)", x == 200 ? "2.0.0" : "1.0." + (x % 50)), inner));
+        }
+
+        List<SelectionSource> selectedSources = process(sources);
+
+        assertEquals(Collections.singletonList(newest), selectedSources);
+    }
+
+    @Test
+    public void peekingOnlyOpensWinners() throws InvalidVersionSpecificationException {
+        SelectionSource deep = new SelectionSource("test.deep");
+        SelectionSource middle = createSource("middle", createArtifact("test.deep", "[1.0.0,)", "1.0.0"), deep);
+        List<SelectionSource> sources = new ArrayList<>();
+        sources.add(createSource("outer_middle", createArtifact("middle", "[1.0.0,)", "1.0.0"), middle));
+        for (int x = 0; x < 8; x++)
+            sources.add(createSource("outer_" + x, createArtifact("[1.0.0,)", "1.0." + x), "test.one"));
+
+        CountingSelector selector = new CountingSelector(true);
+        selector.add(sources);
+
+        List<SelectionSource> selectedSources = selector.select();
+
+        assertEquals(3, selectedSources.size());
+        assertTrue(selectedSources.contains(middle));
+        assertTrue(selectedSources.contains(deep));
+        assertTrue(selectedSources.contains(sources.get(8).getInternal("test.one").get()));
+        // The middle jar has to be opened to keep searching, the others only once they win
+        assertEquals(3, selector.opened.size());
+        assertFalse(selector.read.contains(middle), "Metadata peeked from the middle jar should not be read again once it is opened");
+    }
+
+    @Test
+    public void asyncPeekingOnlyOpensWinners() throws Exception {
+        SelectionSource deep = new SelectionSource("test.deep");
+        SelectionSource middle = createSource("middle", createArtifact("test.deep", "[1.0.0,)", "1.0.0"), deep);
+        List<SelectionSource> sources = new ArrayList<>();
+        sources.add(createSource("outer_middle", createArtifact("middle", "[1.0.0,)", "1.0.0"), middle));
+        for (int x = 0; x < 8; x++)
+            sources.add(createSource("outer_" + x, createArtifact("[1.0.0,)", "1.0." + x), "test.one"));
+
+        List<String> peeked = Collections.synchronizedList(new ArrayList<>());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            CountingSelector selector = new CountingSelector(true) {
+                @Override
+                protected InputStream peekNested(SelectionSource source, String nested, String path) {
+                    throw new AssertionError("Async discovery should peek asynchronously");
+                }
+
+                @Override
+                protected CompletableFuture<InputStream> peekNestedAsync(SelectionSource source, String nested, String path) {
+                    return CompletableFuture.supplyAsync(() -> {
+                        peeked.add(nested);
+                        return super.peekNested(source, nested, path);
+                    }, executor);
+                }
+            };
+            selector.addAsync(sources).get(10, TimeUnit.SECONDS);
+
+            List<SelectionSource> selectedSources = selector.select();
+            assertEquals(3, selectedSources.size());
+            assertTrue(selectedSources.contains(deep));
+            assertFalse(peeked.isEmpty());
+            assertEquals(3, selector.opened.size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void skipsNestedJarsClaimedByForcedSources() throws InvalidVersionSpecificationException {
+        SelectionSource bundled = createSource("test.one", createArtifact("test.two", "[1.0.0,)", "1.0.0"), "test.two");
+
+        CountingSelector selector = new CountingSelector() {
+            @Override
+            protected String getNestedIdentifier(ContainedJarMetadata jar) {
+                return jar.identifier().group();
+            }
+        };
+        selector.force(new SelectionSource("test.one"));
+        selector.add(createSource("wrapper", createArtifact("[1.0.0,)", "1.0.0"), bundled));
+
+        assertEquals(0, selector.select().size(), "Expected no result, as the outer was forced.");
+        assertTrue(selector.opened.isEmpty(), "Claimed jar should not be opened, got " + selector.opened);
+        assertFalse(selector.isRequired(id("test.two")), "Claimed jar should not be scanned");
+    }
+
+    @Test
+    public void listenerReceivesEvents() throws InvalidVersionSpecificationException {
+        SelectionSource newer = new SelectionSource("test.one");
+        List<String> events = new ArrayList<>();
+        SelectionTimings<SelectionSource> timings = new SelectionTimings<>();
+
+        JarSelector<SelectionSource> selector = new Selector();
+        selector.setListener(new SelectionListener<SelectionSource>() {
+            @Override
+            public void readFinished(SelectionSource source, int depth, long nanos, long bytes, boolean found) {
+                timings.readFinished(source, depth, nanos, bytes, found);
+                if (found)
+                    events.add("read " + source.getName() + " " + depth);
+            }
+
+            @Override
+            public void nestedOpened(SelectionSource parent, String path, SelectionSource nested, long nanos) {
+                timings.nestedOpened(parent, path, nested, nanos);
+            }
+
+            @Override
+            public void resolved(ContainedJarIdentifier identifier, VersionRange range, ContainedJarMetadata selected) {
+                events.add("resolved " + identifier.group() + " " + selected.version().artifactVersion());
+            }
+
+            @Override
+            public void selected(ContainedJarIdentifier identifier, ContainedJarMetadata metadata, SelectionSource winner) {
+                events.add("selected " + winner.getName());
+            }
+        });
+        selector.add(createSource("outer_older", createArtifact("[1.0.0,)", "1.0.0"), "test.one"));
+        selector.add(createSource("outer_newer", createArtifact("[1.0.0,)", "1.0.1"), newer));
+
+        assertEquals(Collections.singletonList(newer), selector.select());
+        assertEquals(Arrays.asList("read outer_older 0", "read outer_newer 0", "resolved test.one 1.0.1", "selected test.one"), events);
+        assertEquals(1, timings.getMaxDepth());
+        assertEquals(2, timings.getReads(0));
+        assertEquals(2, timings.getReads(1), "Inner jars are read even without metadata");
+        assertTrue(timings.getReadBytes(0) > 0);
+        assertEquals(2, timings.getOpened());
+    }
+
 
     private ContainedJarIdentifier id(String group) {
         return id(group, "artifact");
@@ -283,6 +786,70 @@ public class JarSelectorTest {
         }
     }
 
+    private static class CountingSelector extends Selector {
+        private final List<SelectionSource> read = Collections.synchronizedList(new ArrayList<>());
+        private final List<SelectionSource> opened = Collections.synchronizedList(new ArrayList<>());
+        private final List<SelectionSource> released = Collections.synchronizedList(new ArrayList<>());
+        private final boolean peeking;
+
+        private CountingSelector() {
+            this(false);
+        }
+
+        private CountingSelector(boolean peeking) {
+            this.peeking = peeking;
+        }
+
+        @Override
+        protected InputStream getResource(SelectionSource source, String path) {
+            read.add(source);
+            return super.getResource(source, path);
+        }
+
+        @Override
+        protected SelectionSource getNested(SelectionSource source, String path) {
+            SelectionSource ret = super.getNested(source, path);
+            if (ret != null)
+                opened.add(ret);
+            return ret;
+        }
+
+        @Override
+        protected void release(SelectionSource source) {
+            released.add(source);
+        }
+
+        @Override
+        protected boolean canPeek(SelectionSource source) {
+            return peeking;
+        }
+
+        @Override
+        protected InputStream peekNested(SelectionSource source, String nested, String path) {
+            return source.getInternal(nested).flatMap(s -> s.getResource(path)).orElse(null);
+        }
+    }
+
+    private static class CachingSelector extends Selector {
+        private final List<SelectionSource> read;
+
+        private CachingSelector(Path file, List<SelectionSource> read) {
+            this.read = read;
+            setResolutionCache(ResolutionCache.file(file));
+        }
+
+        @Override
+        protected InputStream getResource(SelectionSource source, String path) {
+            read.add(source);
+            return super.getResource(source, path);
+        }
+
+        @Override
+        protected String getFingerprint(SelectionSource source) {
+            return source.getName();
+        }
+    }
+
     private final class SelectionSource {
         private final String name;
         private Metadata metadata = null;
@@ -0,0 +1,125 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selector;
+
+import net.minecraftforge.jarjar.metadata.ContainedJarIdentifier;
+import net.minecraftforge.jarjar.metadata.ContainedJarMetadata;
+import net.minecraftforge.jarjar.metadata.ContainedVersion;
+import net.minecraftforge.jarjar.selection.LibraryPool;
+import net.minecraftforge.jarjar.selection.PathJarSelector;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.Attributes;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LibraryPoolTest {
+    @Test
+    public void readsCoordinatesAndReusesIndex() throws Exception {
+        final Path root = Files.createTempDirectory("libraries");
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Path libraries = Files.createDirectories(root.resolve("libraries"));
+            final Path index = root.resolve("index.txt");
+            jar(libraries.resolve("manifest.jar"), "test.group:manifest:1.2.3", null);
+            jar(libraries.resolve("nested/pom.jar"), null, "groupId=test.group\nartifactId=pom\nversion=2.0\n");
+            jar(libraries.resolve("unknown.jar"), null, null);
+
+            LibraryPool pool = LibraryPool.scan(libraries, index, executor);
+            assertEquals(new HashSet<>(Arrays.asList("test.group:manifest:1.2.3", "test.group:pom:2.0")), coordinates(pool));
+            assertTrue(Files.exists(index));
+
+            // Same size and time, so the index is trusted without opening the jar again
+            Path manifest = libraries.resolve("manifest.jar");
+            FileTime modified = Files.getLastModifiedTime(manifest);
+            Files.write(manifest, new byte[(int)Files.size(manifest)]);
+            Files.setLastModifiedTime(manifest, modified);
+            assertEquals(coordinates(pool), coordinates(LibraryPool.scan(libraries, index, null)));
+
+            // A changed jar is read again
+            jar(libraries.resolve("nested/pom.jar"), null, "groupId=test.group\nartifactId=pom\nversion=2.1\n");
+            Files.setLastModifiedTime(libraries.resolve("nested/pom.jar"), FileTime.fromMillis(modified.toMillis() + 2000));
+            assertTrue(coordinates(LibraryPool.scan(libraries, index, null)).contains("test.group:pom:2.1"));
+        } finally {
+            executor.shutdown();
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    @Test
+    public void pooledVersionsDoNotRestrictEachOther() throws Exception {
+        final Path libraries = Files.createTempDirectory("libraries");
+        try {
+            jar(libraries.resolve("lib-1.0.jar"), "test.group:lib:1.0", null);
+            jar(libraries.resolve("lib-2.0.jar"), "test.group:lib:2.0", null);
+            LibraryPool pool = LibraryPool.scan(libraries, libraries.resolve("index.txt"), null);
+
+            try (PathJarSelector selector = new PathJarSelector()) {
+                // Someone pins the older version, which has to stay selectable next to the newer one
+                selector.addRequirement(new ContainedJarMetadata(
+                    new ContainedJarIdentifier("test.group", "lib"),
+                    new ContainedVersion(VersionRange.createFromVersionSpec("[1.0]"), new DefaultArtifactVersion("1.0")),
+                    "lib.jar",
+                    false
+                ));
+                pool.registerRequired(selector);
+                assertEquals(Collections.singletonList(libraries.resolve("lib-1.0.jar")), selector.select());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(libraries)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList()))
+                    Files.delete(file);
+            }
+        }
+    }
+
+    private static Set<String> coordinates(LibraryPool pool) {
+        Set<String> ret = new HashSet<>();
+        for (LibraryPool.Library library : pool.getLibraries()) {
+            ContainedJarIdentifier id = library.metadata().identifier();
+            ret.add(id.group() + ':' + id.artifact() + ':' + library.metadata().version().artifactVersion());
+        }
+        return ret;
+    }
+
+    private static void jar(Path path, String artifact, String pom) throws IOException {
+        Files.createDirectories(path.getParent());
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        if (artifact != null)
+            manifest.getMainAttributes().putValue("Maven-Artifact", artifact);
+
+        try (JarOutputStream jar = new JarOutputStream(Files.newOutputStream(path), manifest)) {
+            if (pom != null) {
+                jar.putNextEntry(new ZipEntry("META-INF/maven/test/lib/pom.properties"));
+                jar.write(pom.getBytes(StandardCharsets.UTF_8));
+                jar.closeEntry();
+            }
+        }
+    }
+}
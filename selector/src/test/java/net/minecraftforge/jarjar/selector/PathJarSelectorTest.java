@@ -0,0 +1,238 @@
+/*
+ * Copyright (c) Forge Development LLC
+ * SPDX-License-Identifier: LGPL-2.1-only
+ */
+package net.minecraftforge.jarjar.selector;
+
+import net.minecraftforge.jarjar.metadata.*;
+import net.minecraftforge.jarjar.selection.JarSelector;
+import net.minecraftforge.jarjar.selection.PathJarSelector;
+import org.apache.maven.artifact.versioning.DefaultArtifactVersion;
+import org.apache.maven.artifact.versioning.VersionRange;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PathJarSelectorTest {
+    @Test
+    public void selectsNestedJarsAndCachesMetadata() throws Exception {
+        final Path outer = Files.createTempFile("outer", ".jar");
+        try {
+            byte[] deep = jar(null, null);
+            byte[] lib = jar(metadata("test.deep", "deep.jar"), deep);
+            Files.write(outer, jar(metadata("test.lib", "lib.jar"), lib));
+
+            Map<String, Metadata> cache = new ConcurrentHashMap<>();
+            List<Path> read = new ArrayList<>();
+            try (PathJarSelector selector = new CountingSelector(cache, read)) {
+                selector.add(outer);
+
+                List<Path> selected = selector.select();
+                assertEquals(new HashSet<>(Arrays.asList("lib.jar", "deep.jar")), names(selected));
+                // deep.jar has no jars of its own, so it is only peeked at, and lib.jar's peeked metadata is used once it is opened
+                assertEquals(Collections.singletonList(outer), read);
+                assertEquals(2, cache.size());
+            }
+
+            read.clear();
+            try (PathJarSelector selector = new CountingSelector(cache, read)) {
+                selector.add(outer);
+                assertEquals(2, selector.select().size());
+                assertTrue(read.isEmpty());
+            }
+        } finally {
+            Files.delete(outer);
+        }
+    }
+
+    @Test
+    public void prefersBinaryMetadata() throws Exception {
+        final Path outer = Files.createTempFile("outer", ".jar");
+        try {
+            byte[] deep = jar(null, null);
+            Metadata metadata = metadata("test.deep", "deep.jar");
+            Metadata outerMetadata = metadata("test.lib", "lib.jar");
+
+            // The JSON is stale, only the binary copy knows about deep.jar
+            byte[] lib = jar(new Metadata(Collections.emptyList()), MetadataIOHandler.toBinary(metadata), metadata.jars().get(0).path(), deep);
+            Files.write(outer, jar(outerMetadata, lib));
+            try (PathJarSelector selector = new PathJarSelector()) {
+                selector.setBinaryMetadata(true);
+                selector.add(outer);
+                assertEquals(new HashSet<>(Arrays.asList("lib.jar", "deep.jar")), names(selector.select()));
+            }
+
+            // Without opting in, the binary copy is never looked for
+            try (PathJarSelector selector = new PathJarSelector()) {
+                selector.add(outer);
+                assertEquals(Collections.singleton("lib.jar"), names(selector.select()));
+            }
+
+            // Invalid binary metadata falls back to the JSON
+            byte[] corrupt = Arrays.copyOf(MetadataIOHandler.toBinary(metadata), 8);
+            Files.write(outer, jar(outerMetadata, jar(metadata, corrupt, metadata.jars().get(0).path(), deep)));
+            try (PathJarSelector selector = new PathJarSelector()) {
+                selector.setBinaryMetadata(true);
+                selector.add(outer);
+                assertEquals(new HashSet<>(Arrays.asList("lib.jar", "deep.jar")), names(selector.select()));
+            }
+
+            // Added sources prefer their binary copy the same way nested jars do
+            Files.write(outer, jar(new Metadata(Collections.emptyList()), MetadataIOHandler.toBinary(outerMetadata), outerMetadata.jars().get(0).path(), lib));
+            try (PathJarSelector selector = new PathJarSelector()) {
+                selector.setBinaryMetadata(true);
+                selector.add(outer);
+                assertEquals(new HashSet<>(Arrays.asList("lib.jar", "deep.jar")), names(selector.select()));
+            }
+            try (PathJarSelector selector = new PathJarSelector()) {
+                selector.add(outer);
+                assertTrue(selector.select().isEmpty());
+            }
+        } finally {
+            Files.delete(outer);
+        }
+    }
+
+    @Test
+    public void discoversTreeFromIndex() throws Exception {
+        final Path outer = Files.createTempFile("outer", ".jar");
+        try {
+            Metadata libMetadata = metadata("test.deep", "deep.jar");
+            Metadata outerMetadata = metadata("test.lib", "lib.jar");
+            byte[] lib = jar(libMetadata, jar(null, null));
+
+            Map<String, Metadata> containers = new LinkedHashMap<>();
+            containers.put("", outerMetadata);
+            containers.put("META-INF/jarjar/lib.jar", libMetadata);
+            byte[] index = toBytes(MetadataIOHandler.toInputStream(new MetadataIndex(containers)));
+            Files.write(outer, jar(outerMetadata, null, index, outerMetadata.jars().get(0).path(), lib));
+
+            List<Path> read = new ArrayList<>();
+            try (PathJarSelector selector = new CountingSelector(new ConcurrentHashMap<>(), read)) {
+                selector.setMetadataIndex(true);
+                selector.add(outer);
+                // Only the index was read, nothing nested was opened to find deep.jar
+                assertEquals(Collections.singletonList(outer), read);
+
+                assertEquals(new HashSet<>(Arrays.asList("lib.jar", "deep.jar")), names(selector.select()));
+            }
+
+            // Without opting in, the index is never looked for and the tree is discovered from each jar's metadata
+            List<String> paths = new ArrayList<>();
+            try (PathJarSelector selector = new PathJarSelector() {
+                @Override
+                protected InputStream getResource(Path source, String path) {
+                    paths.add(path);
+                    return super.getResource(source, path);
+                }
+            }) {
+                selector.add(outer);
+                assertFalse(paths.contains(JarSelector.CONTAINED_JARS_INDEX_PATH), "Index should not be looked for, got " + paths);
+
+                assertEquals(new HashSet<>(Arrays.asList("lib.jar", "deep.jar")), names(selector.select()));
+            }
+        } finally {
+            Files.delete(outer);
+        }
+    }
+
+    private static HashSet<String> names(List<Path> paths) {
+        HashSet<String> ret = new HashSet<>();
+        for (Path path : paths)
+            ret.add(path.getFileName().toString());
+        return ret;
+    }
+
+    private static Metadata metadata(String artifact, String file) throws Exception {
+        return new Metadata(Collections.singletonList(new ContainedJarMetadata(
+            new ContainedJarIdentifier("test", artifact),
+            new ContainedVersion(VersionRange.createFromVersionSpec("[1.0,)"), new DefaultArtifactVersion("1.0")),
+            "META-INF/jarjar/" + file,
+            false
+        )));
+    }
+
+    private static byte[] jar(Metadata metadata, byte[] nested) throws IOException {
+        return jar(metadata, null, metadata == null ? null : metadata.jars().get(0).path(), nested);
+    }
+
+    private static byte[] jar(Metadata metadata, byte[] binary, String path, byte[] nested) throws IOException {
+        return jar(metadata, binary, null, path, nested);
+    }
+
+    private static byte[] jar(Metadata metadata, byte[] binary, byte[] index, String path, byte[] nested) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry("META-INF/MANIFEST.MF"));
+            zip.write("Manifest-Version: 1.0\n".getBytes());
+            zip.closeEntry();
+
+            if (metadata != null) {
+                zip.putNextEntry(new ZipEntry(JarSelector.CONTAINED_JARS_METADATA_PATH));
+                zip.write(toBytes(MetadataIOHandler.toInputStream(metadata)));
+                zip.closeEntry();
+
+                if (index != null) {
+                    zip.putNextEntry(new ZipEntry(JarSelector.CONTAINED_JARS_INDEX_PATH));
+                    zip.write(index);
+                    zip.closeEntry();
+                }
+
+                if (binary != null) {
+                    zip.putNextEntry(new ZipEntry(JarSelector.CONTAINED_JARS_BINARY_METADATA_PATH));
+                    zip.write(binary);
+                    zip.closeEntry();
+                }
+
+                zip.putNextEntry(new ZipEntry(path));
+                zip.write(nested);
+                zip.closeEntry();
+            }
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] toBytes(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream is = stream) {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = is.read(buf)) != -1)
+                out.write(buf, 0, len);
+        }
+        return out.toByteArray();
+    }
+
+    private static class CountingSelector extends PathJarSelector {
+        private final List<Path> read;
+
+        private CountingSelector(Map<String, Metadata> cache, List<Path> read) {
+            super(cache);
+            this.read = read;
+        }
+
+        @Override
+        protected InputStream getResource(Path source, String path) {
+            InputStream ret = super.getResource(source, path);
+            if (ret != null)
+                read.add(source);
+            return ret;
+        }
+    }
+}